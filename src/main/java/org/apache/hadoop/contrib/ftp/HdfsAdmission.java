@@ -0,0 +1,230 @@
+package org.apache.hadoop.contrib.ftp;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admission of NameNode calls. At most a fixed number of calls run at the same
+ * time, callers over the limit wait in per-user queues which are served in turn,
+ * so one busy user can't take all the slots. A caller which waits longer than
+ * the timeout gets HdfsBusyException. Nested calls of a thread which is already
+ * admitted don't take another slot
+ */
+public class HdfsAdmission {
+
+	private static class Waiter {
+		private boolean admitted = false;
+	}
+
+	private final int limit;
+
+	private final long timeout;
+
+	private int active = 0;
+
+	// waiting callers by user and users with waiting callers in the order they are served
+	private final Map<String, ArrayDeque<Waiter>> queues = new HashMap<String, ArrayDeque<Waiter>>();
+
+	private final ArrayDeque<String> turns = new ArrayDeque<String>();
+
+	private int queued = 0;
+
+	private final ThreadLocal<int[]> depth = new ThreadLocal<int[]>() {
+		protected int[] initialValue() {
+			return new int[1];
+		}
+	};
+
+	private final AtomicLong admitted = new AtomicLong();
+
+	private final AtomicLong waited = new AtomicLong();
+
+	private final AtomicLong rejected = new AtomicLong();
+
+	private final AtomicLong queueTime = new AtomicLong();
+
+	private final AtomicLong maxQueueTime = new AtomicLong();
+
+	/**
+	 * Constructs the admission
+	 *
+	 * @param limit   maximum number of concurrent calls, 0 disables the limit
+	 * @param timeout maximum time in milliseconds to wait for admission
+	 */
+	public HdfsAdmission(int limit, long timeout) {
+		this.limit = limit;
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Wait for admission of a call. Has to be followed by exit
+	 *
+	 * @param user user the call is made for
+	 * @throws HdfsBusyException if the call was not admitted in time
+	 */
+	public void enter(String user) {
+		if (limit <= 0) {
+			return;
+		}
+		int[] d = depth.get();
+		if (d[0] > 0) {
+			d[0]++;
+			return;
+		}
+
+		long started = System.nanoTime();
+		synchronized (this) {
+			if (active < limit && queued == 0) {
+				active++;
+			} else {
+				Waiter waiter = new Waiter();
+				ArrayDeque<Waiter> queue = queues.get(user);
+				if (queue == null) {
+					queue = new ArrayDeque<Waiter>();
+					queues.put(user, queue);
+					turns.add(user);
+				}
+				queue.add(waiter);
+				queued++;
+				waited.incrementAndGet();
+
+				long deadline = started + TimeUnit.MILLISECONDS.toNanos(timeout);
+				try {
+					while (!waiter.admitted) {
+						long now = System.nanoTime();
+						if (now >= deadline) {
+							break;
+						}
+						TimeUnit.NANOSECONDS.timedWait(this, deadline - now);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				if (!waiter.admitted) {
+					queue.remove(waiter);
+					queued--;
+					if (queue.isEmpty()) {
+						queues.remove(user);
+						turns.remove(user);
+					}
+					rejected.incrementAndGet();
+					throw new HdfsBusyException("HDFS is busy, " + user + " waited " + timeout + " ms");
+				}
+				recordWait(System.nanoTime() - started);
+			}
+		}
+		admitted.incrementAndGet();
+		d[0] = 1;
+	}
+
+	private void recordWait(long nanos) {
+		long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+		queueTime.addAndGet(millis);
+		long max;
+		while ((max = maxQueueTime.get()) < millis && !maxQueueTime.compareAndSet(max, millis)) {
+		}
+	}
+
+	/**
+	 * Finish an admitted call and admit the next waiting one
+	 */
+	public void exit() {
+		if (limit <= 0) {
+			return;
+		}
+		int[] d = depth.get();
+		if (--d[0] > 0) {
+			return;
+		}
+		synchronized (this) {
+			active--;
+			// next user in turn gets the slot and goes to the end of the line
+			while (active < limit && !turns.isEmpty()) {
+				String user = turns.poll();
+				ArrayDeque<Waiter> queue = queues.get(user);
+				Waiter waiter = queue.poll();
+				if (queue.isEmpty()) {
+					queues.remove(user);
+				} else {
+					turns.add(user);
+				}
+				queued--;
+				waiter.admitted = true;
+				active++;
+			}
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Get number of admitted calls
+	 *
+	 * @return admitted calls
+	 */
+	public long getAdmitted() {
+		return admitted.get();
+	}
+
+	/**
+	 * Get number of calls which had to wait in a queue
+	 *
+	 * @return queued calls
+	 */
+	public long getWaited() {
+		return waited.get();
+	}
+
+	/**
+	 * Get number of calls rejected after the timeout
+	 *
+	 * @return rejected calls
+	 */
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	/**
+	 * Get total time admitted calls spent in the queues
+	 *
+	 * @return queue time in milliseconds
+	 */
+	public long getQueueTime() {
+		return queueTime.get();
+	}
+
+	/**
+	 * Get the longest time an admitted call spent in a queue
+	 *
+	 * @return maximum queue time in milliseconds
+	 */
+	public long getMaxQueueTime() {
+		return maxQueueTime.get();
+	}
+
+	/**
+	 * Get number of calls running now
+	 *
+	 * @return active calls
+	 */
+	public synchronized int getActive() {
+		return active;
+	}
+
+	/**
+	 * Get number of calls waiting now
+	 *
+	 * @return waiting calls
+	 */
+	public synchronized int getQueued() {
+		return queued;
+	}
+
+	public String toString() {
+		return "admission: active=" + getActive() + " queued=" + getQueued() + " admitted=" + getAdmitted()
+				+ " waited=" + getWaited() + " rejected=" + getRejected() + " queue time=" + getQueueTime()
+				+ "ms max=" + getMaxQueueTime() + "ms";
+	}
+}
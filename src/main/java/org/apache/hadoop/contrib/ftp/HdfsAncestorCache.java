@@ -0,0 +1,169 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.apache.hadoop.fs.Path;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Server-wide cache which maps directories that don't exist yet to their
+ * nearest existing ancestor. Uploads into new paths check write permission
+ * on that ancestor, so the walk up the tree is done once per directory
+ * instead of once per uploaded file.
+ * <p/>
+ * Like HdfsMetadataCache, the cache keeps generations of the paths. A caller reads
+ * the generation of a directory before checking that it doesn't exist, the
+ * directory is not cached if it has been created or its ancestor removed meanwhile
+ */
+public class HdfsAncestorCache {
+
+	private final long ttl;
+
+	private final int maxEntries;
+
+	private final LinkedHashMap<String, Entry> entries;
+
+	// changed under the lock of the entries
+	private final HdfsPathGenerations generations = new HdfsPathGenerations();
+
+	private static class Entry {
+		private final String ancestor;
+		private final long expires;
+
+		private Entry(String ancestor, long expires) {
+			this.ancestor = ancestor;
+			this.expires = expires;
+		}
+	}
+
+	/**
+	 * Constructs the cache
+	 *
+	 * @param ttl        time to live of an entry in milliseconds, 0 disables the cache
+	 * @param maxEntries maximum number of entries, 0 disables the cache
+	 */
+	public HdfsAncestorCache(long ttl, final int maxEntries) {
+		this.ttl = ttl;
+		this.maxEntries = maxEntries;
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	private boolean isEnabled() {
+		return ttl > 0 && maxEntries > 0;
+	}
+
+	/**
+	 * Get nearest existing ancestor of a missing directory
+	 *
+	 * @param missing directory which doesn't exist
+	 * @return path of the ancestor or null if it is not cached
+	 */
+	public String get(Path missing) {
+		if (!isEnabled()) {
+			return null;
+		}
+		String key = key(missing);
+		synchronized (entries) {
+			Entry entry = entries.get(key);
+			if (entry != null) {
+				if (entry.expires > System.currentTimeMillis()) {
+					return entry.ancestor;
+				}
+				entries.remove(key);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Get current generation of a directory, see put
+	 *
+	 * @param dir directory which is going to be checked
+	 * @return generation
+	 */
+	public long getGeneration(Path dir) {
+		return generations.get(key(dir));
+	}
+
+	/**
+	 * Remember nearest existing ancestor of a missing directory unless the directory
+	 * has been created or the ancestor removed since the generation was read
+	 *
+	 * @param missing    directory which doesn't exist
+	 * @param ancestor   its nearest existing ancestor
+	 * @param generation generation of the directory read before it was found missing
+	 */
+	public void put(Path missing, Path ancestor, long generation) {
+		if (!isEnabled()) {
+			return;
+		}
+		String key = key(missing);
+		Entry entry = new Entry(key(ancestor), System.currentTimeMillis() + ttl);
+		synchronized (entries) {
+			if (generation == generations.get(key)) {
+				entries.put(key, entry);
+			}
+		}
+	}
+
+	/**
+	 * Drop entries affected by creation of a path together with its missing parents:
+	 * the path itself, its ancestors and everything below it
+	 *
+	 * @param created created path
+	 */
+	public void invalidateCreated(Path created) {
+		if (!isEnabled()) {
+			return;
+		}
+		String path = key(created);
+		synchronized (entries) {
+			generations.touchTree(path);
+			for (Path p = created; p != null; p = p.getParent()) {
+				generations.touch(key(p));
+			}
+			Iterator<String> it = entries.keySet().iterator();
+			while (it.hasNext()) {
+				String key = it.next();
+				if (isSameOrBelow(key, path) || isSameOrBelow(path, key)) {
+					it.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Drop entries which resolve to a removed path or to anything below it
+	 *
+	 * @param removed deleted or moved path
+	 */
+	public void invalidateRemoved(Path removed) {
+		if (!isEnabled()) {
+			return;
+		}
+		String path = key(removed);
+		synchronized (entries) {
+			// directories below the removed path have it as an ancestor
+			generations.touchTree(path);
+			Iterator<Entry> it = entries.values().iterator();
+			while (it.hasNext()) {
+				if (isSameOrBelow(it.next().ancestor, path)) {
+					it.remove();
+				}
+			}
+		}
+	}
+
+	private static boolean isSameOrBelow(String path, String dir) {
+		return path.equals(dir) || path.startsWith(dir.endsWith("/") ? dir : dir + "/");
+	}
+
+	private static String key(Path path) {
+		return path.toUri().getPath();
+	}
+}
@@ -0,0 +1,441 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.permission.FsAction;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Virtual archive of a directory. RETR of "dir.tar" or "dir.zip" is answered
+ * with an archive which is built on the fly: the directory tree is walked
+ * with listStatus and every entry is written as soon as it is read, nothing
+ * is kept on disk or in memory. Entries the user can't read are skipped
+ */
+public class HdfsArchive {
+
+	private final static Logger log = LoggerFactory.getLogger(HdfsArchive.class);
+
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	// number of chunks between the archive writer and the data connection
+	private static final int PIPE_DEPTH = 4;
+
+	private static final int TAR_BLOCK = 512;
+
+	/**
+	 * Archive format
+	 */
+	public enum Format {
+		TAR(".tar"), ZIP(".zip");
+
+		private final String extension;
+
+		Format(String extension) {
+			this.extension = extension;
+		}
+	}
+
+	private final HdfsFileObject dir;
+
+	private final HdfsUser user;
+
+	private final Format format;
+
+	private final byte[] buf = new byte[CHUNK_SIZE];
+
+	private HdfsArchive(HdfsFileObject dir, HdfsUser user, Format format) {
+		this.dir = dir;
+		this.user = user;
+		this.format = format;
+	}
+
+	/**
+	 * Get format of the virtual archive by its name
+	 *
+	 * @param fileName requested file name
+	 * @return archive format or null if the name is not an archive name
+	 */
+	public static Format getFormat(String fileName) {
+		String lower = fileName.toLowerCase();
+		for (Format format : Format.values()) {
+			if (lower.endsWith(format.extension) && lower.length() > format.extension.length()) {
+				return format;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Get name of the archived directory
+	 *
+	 * @param fileName requested file name
+	 * @param format   archive format
+	 * @return directory name
+	 */
+	public static String getDirectoryName(String fileName, Format format) {
+		return fileName.substring(0, fileName.length() - format.extension.length());
+	}
+
+	/**
+	 * Start building the archive of the directory
+	 *
+	 * @param dir      directory to archive
+	 * @param user     user who downloads the archive
+	 * @param format   archive format
+	 * @param executor executor to run the archive writer
+	 * @return stream of the archive
+	 */
+	public static InputStream open(HdfsFileObject dir, HdfsUser user, Format format, ExecutorService executor) {
+		final HdfsArchive archive = new HdfsArchive(dir, user, format);
+		final Pipe pipe = new Pipe();
+		executor.execute(new Runnable() {
+			public void run() {
+				archive.write(pipe);
+			}
+		});
+		return pipe;
+	}
+
+	private void write(Pipe pipe) {
+		OutputStream out = pipe.getOutputStream();
+		IOException error = null;
+		boolean done = false;
+		try {
+			String root = dir.getShortName().equals("/") ? "root" : dir.getShortName();
+			if (format == Format.TAR) {
+				writeTar(dir.getFileStatus(), root + "/", out);
+				// end of archive
+				out.write(new byte[TAR_BLOCK * 2]);
+				out.close();
+			} else {
+				ZipOutputStream zip = new ZipOutputStream(out);
+				writeZip(dir.getFileStatus(), root + "/", zip);
+				zip.close();
+			}
+			done = true;
+		} catch (IOException e) {
+			error = e;
+		} finally {
+			// the reader waits for the end of the pipe, it has to get one on any failure
+			if (!done) {
+				if (error == null) {
+					error = new IOException("Archive writer failed");
+				}
+				log.debug("Archive of " + dir.getFullName() + " failed", error);
+				pipe.fail(error);
+			}
+		}
+	}
+
+	/**
+	 * Checks if the directory can be listed and its entries can be accessed
+	 */
+	private boolean canList(FileStatus status) {
+		return HdfsPermissionChecker.check(user, status, FsAction.READ_EXECUTE);
+	}
+
+	private FileStatus[] list(FileStatus status) throws IOException {
+		DistributedFileSystem dfs = HdfsOverFtpSystem.getDfs(user);
+		HdfsMetadataCache cache = HdfsOverFtpSystem.getMetadataCache();
+		long generation = cache.getGeneration(status.getPath());
+		FileStatus[] entries = dfs.listStatus(status.getPath());
+		if (entries == null) {
+			return new FileStatus[0];
+		}
+		cache.putListing(status.getPath(), entries, generation);
+		return entries;
+	}
+
+	private void writeTar(FileStatus status, String name, OutputStream out) throws IOException {
+		if (!canList(status)) {
+			log.debug("PERMISSIONS: {} - skipped in archive", status.getPath());
+			return;
+		}
+		writeTarHeader(name, status, '5', 0, out);
+		for (FileStatus entry : list(status)) {
+			String entryName = name + entry.getPath().getName();
+			if (entry.isDir()) {
+				writeTar(entry, entryName + "/", out);
+			} else if (HdfsPermissionChecker.check(user, entry, FsAction.READ)) {
+				writeTarHeader(entryName, entry, '0', entry.getLen(), out);
+				long copied = copy(entry, out);
+				int padding = (int) ((TAR_BLOCK - copied % TAR_BLOCK) % TAR_BLOCK);
+				out.write(new byte[padding]);
+			} else {
+				log.debug("PERMISSIONS: {} - skipped in archive", entry.getPath());
+			}
+		}
+	}
+
+	private void writeZip(FileStatus status, String name, ZipOutputStream zip) throws IOException {
+		if (!canList(status)) {
+			log.debug("PERMISSIONS: {} - skipped in archive", status.getPath());
+			return;
+		}
+		ZipEntry dirEntry = new ZipEntry(name);
+		dirEntry.setTime(status.getModificationTime());
+		zip.putNextEntry(dirEntry);
+		zip.closeEntry();
+		for (FileStatus entry : list(status)) {
+			String entryName = name + entry.getPath().getName();
+			if (entry.isDir()) {
+				writeZip(entry, entryName + "/", zip);
+			} else if (HdfsPermissionChecker.check(user, entry, FsAction.READ)) {
+				zip.setLevel(HdfsDeflate.isCompressed(entryName) ? Deflater.NO_COMPRESSION
+						: HdfsOverFtpSystem.getCompressionLevel());
+				ZipEntry zipEntry = new ZipEntry(entryName);
+				zipEntry.setTime(entry.getModificationTime());
+				zip.putNextEntry(zipEntry);
+				copy(entry, zip);
+				zip.closeEntry();
+			} else {
+				log.debug("PERMISSIONS: {} - skipped in archive", entry.getPath());
+			}
+		}
+	}
+
+	/**
+	 * Copy the file to the archive. Exactly the length from the listing is written,
+	 * a file which has grown since is cut and a shrunk one is padded with zeros
+	 */
+	private long copy(FileStatus status, OutputStream out) throws IOException {
+		long remaining = status.getLen();
+		FSDataInputStream in = HdfsOverFtpSystem.getDfs(user).open(status.getPath());
+		try {
+			while (remaining > 0) {
+				int n = in.read(buf, 0, (int) Math.min(buf.length, remaining));
+				if (n < 0) {
+					log.warn(status.getPath() + " is shorter than listed, padding the archive entry");
+					Arrays.fill(buf, (byte) 0);
+					n = (int) Math.min(buf.length, remaining);
+				}
+				out.write(buf, 0, n);
+				remaining -= n;
+			}
+		} finally {
+			in.close();
+		}
+		return status.getLen();
+	}
+
+	/**
+	 * Write ustar header of the entry. Names longer than the ustar fields are written
+	 * as GNU long name entries and sizes over 8 GB in GNU base-256 form
+	 */
+	private void writeTarHeader(String name, FileStatus status, char type, long size, OutputStream out)
+			throws IOException {
+		byte[] nameBytes = name.getBytes("UTF-8");
+		if (nameBytes.length > 100) {
+			byte[] longName = new byte[nameBytes.length + 1];
+			System.arraycopy(nameBytes, 0, longName, 0, nameBytes.length);
+			out.write(tarHeader("././@LongLink".getBytes("UTF-8"), status, 'L', longName.length));
+			out.write(longName);
+			out.write(new byte[(TAR_BLOCK - longName.length % TAR_BLOCK) % TAR_BLOCK]);
+		}
+		out.write(tarHeader(nameBytes, status, type, size));
+	}
+
+	private byte[] tarHeader(byte[] name, FileStatus status, char type, long size) throws IOException {
+		byte[] header = new byte[TAR_BLOCK];
+		System.arraycopy(name, 0, header, 0, Math.min(name.length, 100));
+		octal(header, 100, 8, status.getPermission().toShort() & 07777);
+		octal(header, 108, 8, 0);
+		octal(header, 116, 8, 0);
+		if (size < 077777777777L) {
+			octal(header, 124, 12, size);
+		} else {
+			header[124] = (byte) 0x80;
+			for (int i = 135; i > 124; i--) {
+				header[i] = (byte) size;
+				size >>>= 8;
+			}
+		}
+		octal(header, 136, 12, status.getModificationTime() / 1000);
+		header[156] = (byte) type;
+		System.arraycopy("ustar\0".getBytes("US-ASCII"), 0, header, 257, 6);
+		header[263] = '0';
+		header[264] = '0';
+		text(header, 265, 32, status.getOwner());
+		text(header, 297, 32, status.getGroup());
+
+		// checksum is computed with the checksum field filled with spaces
+		for (int i = 148; i < 156; i++) {
+			header[i] = ' ';
+		}
+		long checksum = 0;
+		for (byte b : header) {
+			checksum += b & 0xff;
+		}
+		octal(header, 148, 7, checksum);
+		return header;
+	}
+
+	private static void octal(byte[] header, int offset, int length, long value) {
+		String s = Long.toOctalString(value);
+		int pad = length - 1 - s.length();
+		for (int i = 0; i < pad; i++) {
+			header[offset + i] = '0';
+		}
+		for (int i = 0; i < s.length() && pad + i < length - 1; i++) {
+			header[offset + pad + i] = (byte) s.charAt(i);
+		}
+		header[offset + length - 1] = 0;
+	}
+
+	private static void text(byte[] header, int offset, int length, String value) throws IOException {
+		if (value != null) {
+			byte[] bytes = value.getBytes("UTF-8");
+			System.arraycopy(bytes, 0, header, offset, Math.min(bytes.length, length - 1));
+		}
+	}
+
+	/**
+	 * Bounded pipe between the archive writer and the data connection.
+	 * Closing the input stops the writer, a failure of the writer is
+	 * reported to the reader instead of the end of the stream
+	 */
+	private static class Pipe extends InputStream {
+
+		private static final byte[] EOF = new byte[0];
+
+		private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<byte[]>(PIPE_DEPTH);
+
+		// full chunks given back by the reader for reuse
+		private final BlockingQueue<byte[]> free = new ArrayBlockingQueue<byte[]>(PIPE_DEPTH + 1);
+
+		private volatile IOException error;
+
+		private volatile boolean closed = false;
+
+		private byte[] current;
+
+		private int pos;
+
+		private void put(byte[] chunk) throws IOException {
+			try {
+				while (!chunks.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+					if (closed) {
+						throw new IOException("Archive download aborted");
+					}
+				}
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException("Archive writer interrupted");
+			}
+		}
+
+		private void fail(IOException e) {
+			error = e;
+			chunks.clear();
+			chunks.offer(EOF);
+		}
+
+		private OutputStream getOutputStream() {
+			return new OutputStream() {
+				private byte[] chunk = newChunk();
+				private int len = 0;
+
+				public void write(int b) throws IOException {
+					write(new byte[]{(byte) b}, 0, 1);
+				}
+
+				public void write(byte[] b, int off, int n) throws IOException {
+					while (n > 0) {
+						int count = Math.min(n, chunk.length - len);
+						System.arraycopy(b, off, chunk, len, count);
+						len += count;
+						off += count;
+						n -= count;
+						if (len == chunk.length) {
+							flush();
+						}
+					}
+				}
+
+				public void flush() throws IOException {
+					if (len > 0) {
+						byte[] full = chunk;
+						int size = len;
+						chunk = newChunk();
+						len = 0;
+						if (size < full.length) {
+							byte[] part = new byte[size];
+							System.arraycopy(full, 0, part, 0, size);
+							full = part;
+						}
+						put(full);
+					}
+				}
+
+				public void close() throws IOException {
+					flush();
+					put(EOF);
+				}
+			};
+		}
+
+		private byte[] newChunk() {
+			byte[] chunk = free.poll();
+			return chunk != null ? chunk : new byte[CHUNK_SIZE];
+		}
+
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			int n = read(b, 0, 1);
+			return n < 0 ? -1 : b[0] & 0xff;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (closed) {
+				throw new IOException("Stream is closed");
+			}
+			if (current == null || pos == current.length) {
+				if (current == EOF) {
+					return eof();
+				}
+				if (current != null && current.length == CHUNK_SIZE) {
+					free.offer(current);
+				}
+				try {
+					current = chunks.take();
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException("Interrupted while waiting for the archive");
+				}
+				pos = 0;
+				if (current == EOF) {
+					return eof();
+				}
+			}
+			int n = Math.min(len, current.length - pos);
+			System.arraycopy(current, pos, b, off, n);
+			pos += n;
+			return n;
+		}
+
+		private int eof() throws IOException {
+			if (error != null) {
+				throw error;
+			}
+			return -1;
+		}
+
+		public void close() {
+			closed = true;
+			chunks.clear();
+		}
+	}
+}
@@ -0,0 +1,151 @@
+package org.apache.hadoop.contrib.ftp;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Line end conversion of TYPE A transfers, the same the standard data connection
+ * does: LF is sent as CR LF and CR LF is stored as LF. Used where the conversion
+ * has to happen before MODE Z compression or after decompression
+ */
+public class HdfsAsciiStreams {
+
+	private HdfsAsciiStreams() {
+	}
+
+	/**
+	 * Convert line ends of a stream sent to the client
+	 *
+	 * @param in stream with local line ends
+	 * @return stream with CR LF line ends
+	 */
+	public static InputStream toNetwork(InputStream in) {
+		return new FilterInputStream(in) {
+			private int last = -1;
+			// LF to return after an inserted CR
+			private boolean pendingLf = false;
+			private byte[] raw;
+
+			public int read() throws IOException {
+				if (pendingLf) {
+					pendingLf = false;
+					last = '\n';
+					return '\n';
+				}
+				int b = super.read();
+				if (b == '\n' && last != '\r') {
+					pendingLf = true;
+					last = '\r';
+					return '\r';
+				}
+				last = b;
+				return b;
+			}
+
+			public int read(byte[] b, int off, int len) throws IOException {
+				if (len == 0) {
+					return 0;
+				}
+				int pos = off;
+				int end = off + len;
+				if (pendingLf) {
+					b[pos++] = (byte) read();
+				}
+				// a byte of the file takes at most two bytes of the output
+				int want = (end - pos) / 2;
+				if (want == 0) {
+					if (pos == end) {
+						return pos - off;
+					}
+					int c = read();
+					if (c < 0) {
+						return pos > off ? pos - off : -1;
+					}
+					b[pos++] = (byte) c;
+					return pos - off;
+				}
+				if (raw == null || raw.length < want) {
+					raw = new byte[Math.max(want, 8192)];
+				}
+				int n = in.read(raw, 0, want);
+				if (n < 0) {
+					return pos > off ? pos - off : -1;
+				}
+				for (int i = 0; i < n; i++) {
+					byte c = raw[i];
+					if (c == '\n' && last != '\r') {
+						b[pos++] = '\r';
+					}
+					b[pos++] = c;
+					last = c;
+				}
+				return pos - off;
+			}
+
+			public long skip(long n) throws IOException {
+				throw new IOException("skip is not supported");
+			}
+
+			public boolean markSupported() {
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Convert line ends of a stream received from the client
+	 *
+	 * @param out stream to write local line ends to
+	 * @return stream which takes CR LF line ends
+	 */
+	public static OutputStream fromNetwork(OutputStream out) {
+		return new FilterOutputStream(out) {
+			// CR which may start a CR LF
+			private boolean pendingCr = false;
+
+			public void write(int b) throws IOException {
+				if (pendingCr) {
+					pendingCr = false;
+					if (b != '\n') {
+						out.write('\r');
+					}
+				}
+				if (b == '\r') {
+					pendingCr = true;
+				} else {
+					out.write(b);
+				}
+			}
+
+			public void write(byte[] b, int off, int len) throws IOException {
+				int start = off;
+				int end = off + len;
+				for (int i = off; i < end; i++) {
+					if (pendingCr) {
+						pendingCr = false;
+						if (b[i] != '\n') {
+							out.write('\r');
+						}
+					}
+					if (b[i] == '\r') {
+						out.write(b, start, i - start);
+						start = i + 1;
+						pendingCr = true;
+					}
+				}
+				out.write(b, start, end - start);
+			}
+
+			public void close() throws IOException {
+				if (pendingCr) {
+					pendingCr = false;
+					out.write('\r');
+				}
+				super.close();
+			}
+		};
+	}
+}
@@ -0,0 +1,251 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared pool of transfer buffers. Buffers are grouped in size classes and kept
+ * for reuse after release, the total capacity of allocated buffers is limited
+ * by a ceiling. Buffers which are not released for a long time are reported as leaks
+ */
+public class HdfsBufferPool {
+
+	private final static Logger log = LoggerFactory.getLogger(HdfsBufferPool.class);
+
+	// sizes of the buffer classes, a request is rounded up to the nearest class
+	private static final int[] SIZE_CLASSES = {64 * 1024, 256 * 1024, 1024 * 1024, 4 * 1024 * 1024};
+
+	// buffers held longer than this are reported as leaks
+	private static final long LEAK_AGE = 10 * 60 * 1000;
+
+	private static final long LEAK_CHECK_INTERVAL = 60 * 1000;
+
+	private final long ceiling;
+
+	private final boolean direct;
+
+	private final long maxWait;
+
+	private final ArrayDeque<ByteBuffer>[] free;
+
+	// buffers in use mapped to the time they were acquired
+	private final Map<ByteBuffer, Lease> leases = new IdentityHashMap<ByteBuffer, Lease>();
+
+	private long allocated = 0;
+
+	private long inUse = 0;
+
+	private long lastLeakCheck = System.currentTimeMillis();
+
+	private final AtomicLong failures = new AtomicLong();
+
+	private final AtomicLong waits = new AtomicLong();
+
+	private final AtomicLong waitTime = new AtomicLong();
+
+	private static class Lease {
+		private final long acquired = System.currentTimeMillis();
+		private final String thread = Thread.currentThread().getName();
+		private boolean reported = false;
+	}
+
+	/**
+	 * Constructs the pool
+	 *
+	 * @param ceiling maximum total capacity of pooled buffers in bytes
+	 * @param direct  true to allocate direct buffers
+	 * @param maxWait maximum time in milliseconds to wait for a released buffer when the ceiling is reached
+	 */
+	@SuppressWarnings("unchecked")
+	public HdfsBufferPool(long ceiling, boolean direct, long maxWait) {
+		this.ceiling = ceiling;
+		this.direct = direct;
+		this.maxWait = maxWait;
+		this.free = new ArrayDeque[SIZE_CLASSES.length];
+		for (int i = 0; i < SIZE_CLASSES.length; i++) {
+			free[i] = new ArrayDeque<ByteBuffer>();
+		}
+	}
+
+	private static int sizeClass(int size) {
+		for (int i = 0; i < SIZE_CLASSES.length; i++) {
+			if (size <= SIZE_CLASSES[i]) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Acquire a buffer of at least the given size. If the pool is exhausted and
+	 * no buffer is released in time, an unpooled heap buffer is returned
+	 *
+	 * @param size required size in bytes
+	 * @return cleared buffer, its limit is set to the requested size
+	 */
+	public ByteBuffer acquire(int size) {
+		int sizeClass = sizeClass(size);
+		if (sizeClass < 0) {
+			failures.incrementAndGet();
+			log.warn("Buffer of " + size + " bytes is larger than the biggest pooled buffer");
+			return ByteBuffer.allocate(size);
+		}
+		int capacity = SIZE_CLASSES[sizeClass];
+
+		ByteBuffer buffer = null;
+		synchronized (this) {
+			checkLeaks();
+			long deadline = 0;
+			while (buffer == null) {
+				buffer = free[sizeClass].poll();
+				if (buffer == null && allocated + capacity > ceiling) {
+					// drop released buffers of other classes to make room
+					for (int i = 0; i < free.length && allocated + capacity > ceiling; i++) {
+						while (!free[i].isEmpty() && allocated + capacity > ceiling) {
+							allocated -= free[i].poll().capacity();
+						}
+					}
+				}
+				if (buffer == null && allocated + capacity <= ceiling) {
+					buffer = direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+					allocated += capacity;
+				}
+				if (buffer == null) {
+					long now = System.nanoTime();
+					if (deadline == 0) {
+						deadline = now + TimeUnit.MILLISECONDS.toNanos(maxWait);
+						waits.incrementAndGet();
+					}
+					if (now >= deadline) {
+						break;
+					}
+					try {
+						TimeUnit.NANOSECONDS.timedWait(this, deadline - now);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						break;
+					}
+					waitTime.addAndGet(System.nanoTime() - now);
+				}
+			}
+			if (buffer != null) {
+				inUse += capacity;
+				leases.put(buffer, new Lease());
+			}
+		}
+
+		if (buffer == null) {
+			failures.incrementAndGet();
+			log.debug("Buffer pool exhausted, allocating unpooled buffer of " + size + " bytes");
+			buffer = ByteBuffer.allocate(size);
+		}
+		buffer.clear();
+		buffer.limit(size);
+		return buffer;
+	}
+
+	/**
+	 * Return a buffer to the pool. Unpooled buffers are ignored
+	 *
+	 * @param buffer buffer acquired from the pool
+	 */
+	public void release(ByteBuffer buffer) {
+		if (buffer == null) {
+			return;
+		}
+		synchronized (this) {
+			if (leases.remove(buffer) == null) {
+				return;
+			}
+			inUse -= buffer.capacity();
+			buffer.clear();
+			free[sizeClass(buffer.capacity())].push(buffer);
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Log buffers which have been held for too long. Called under the pool lock
+	 */
+	private void checkLeaks() {
+		long now = System.currentTimeMillis();
+		if (now - lastLeakCheck < LEAK_CHECK_INTERVAL) {
+			return;
+		}
+		lastLeakCheck = now;
+		for (Map.Entry<ByteBuffer, Lease> entry : leases.entrySet()) {
+			Lease lease = entry.getValue();
+			if (!lease.reported && now - lease.acquired > LEAK_AGE) {
+				lease.reported = true;
+				log.warn("Possible buffer leak: " + entry.getKey().capacity() + " bytes acquired by "
+						+ lease.thread + " " + (now - lease.acquired) / 1000 + " seconds ago");
+			}
+		}
+	}
+
+	/**
+	 * Get total capacity of buffers allocated by the pool
+	 *
+	 * @return allocated bytes
+	 */
+	public synchronized long getAllocated() {
+		return allocated;
+	}
+
+	/**
+	 * Get total capacity of buffers currently acquired
+	 *
+	 * @return bytes in use
+	 */
+	public synchronized long getInUse() {
+		return inUse;
+	}
+
+	/**
+	 * Get occupancy of the pool
+	 *
+	 * @return part of the ceiling currently acquired, from 0 to 1
+	 */
+	public synchronized double getOccupancy() {
+		return ceiling > 0 ? (double) inUse / ceiling : 0;
+	}
+
+	/**
+	 * Get number of requests which couldn't be served from the pool
+	 *
+	 * @return number of allocation failures
+	 */
+	public long getFailures() {
+		return failures.get();
+	}
+
+	/**
+	 * Get number of requests which had to wait for a released buffer
+	 *
+	 * @return number of waits
+	 */
+	public long getWaits() {
+		return waits.get();
+	}
+
+	/**
+	 * Get total time requests waited for released buffers
+	 *
+	 * @return wait time in milliseconds
+	 */
+	public long getWaitTime() {
+		return TimeUnit.NANOSECONDS.toMillis(waitTime.get());
+	}
+
+	public String toString() {
+		return "buffer pool: allocated=" + getAllocated() + " in use=" + getInUse() + " failures=" + getFailures()
+				+ " waits=" + getWaits() + " wait time=" + getWaitTime() + "ms";
+	}
+}
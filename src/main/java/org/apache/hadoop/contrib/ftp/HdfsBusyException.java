@@ -0,0 +1,15 @@
+package org.apache.hadoop.contrib.ftp;
+
+/**
+ * Thrown when a NameNode call waits for admission longer than allowed.
+ * It is unchecked, so it passes through FileObject accessors which
+ * hide IOExceptions, and is answered with a transient 4xx reply
+ */
+public class HdfsBusyException extends RuntimeException {
+
+	private static final long serialVersionUID = 2419627398416571201L;
+
+	public HdfsBusyException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,60 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.interfaces.Command;
+import org.apache.ftpserver.interfaces.FtpIoSession;
+import org.apache.ftpserver.interfaces.FtpServerContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * Wrapper of a command which answers 450 when a NameNode call of the command
+ * is not admitted in time, so the client can retry later. A command which has
+ * already sent 150 is aborted with 451 instead, 450 is not a valid reply after
+ * a preliminary one. The command runs in
+ * its own HdfsCommandScope. A RANG range is dropped before commands which don't use it
+ */
+public class HdfsBusyGuardCommand extends HdfsCommand {
+
+	private final static Logger log = LoggerFactory.getLogger(HdfsBusyGuardCommand.class);
+
+	private final Command command;
+
+	/**
+	 * Constructs the guard
+	 *
+	 * @param command command to run
+	 */
+	public HdfsBusyGuardCommand(Command command) {
+		this.command = command;
+	}
+
+	public void execute(FtpIoSession session, FtpServerContext context, FtpRequest request)
+			throws IOException, FtpException {
+		HdfsRangCommand.clearRange(session, request.getCommand());
+		takePreliminarySent(session);
+		HdfsCommandScope.begin();
+		try {
+			command.execute(session, context, request);
+		} catch (HdfsBusyException e) {
+			session.resetState();
+			if (takePreliminarySent(session)) {
+				log.warn(e.getMessage() + ", " + request.getCommand() + " aborted");
+				session.getDataConnection().closeDataConnection();
+				reply(session, FtpReply.REPLY_451_REQUESTED_ACTION_ABORTED,
+						"Requested action aborted: HDFS gateway is busy, try again later.");
+			} else {
+				log.warn(e.getMessage() + ", " + request.getCommand() + " rejected");
+				reply(session, FtpReply.REPLY_450_REQUESTED_FILE_ACTION_NOT_TAKEN,
+						"HDFS gateway is busy, try again later.");
+			}
+		} finally {
+			takePreliminarySent(session);
+			HdfsCommandScope.end();
+		}
+	}
+}
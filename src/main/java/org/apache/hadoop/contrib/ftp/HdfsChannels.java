@@ -0,0 +1,129 @@
+package org.apache.hadoop.contrib.ftp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Channels over plain streams. Unlike Channels.newChannel, which copies every
+ * buffer through its own small array, heap buffers are read and written through
+ * their backing array. Direct buffers have to be copied to reach a stream, they
+ * go through one reused array of the thread
+ */
+public class HdfsChannels {
+
+	private static final int TRANSFER_SIZE = 64 * 1024;
+
+	private static final ThreadLocal<byte[]> transfer = new ThreadLocal<byte[]>() {
+		protected byte[] initialValue() {
+			return new byte[TRANSFER_SIZE];
+		}
+	};
+
+	private HdfsChannels() {
+	}
+
+	/**
+	 * Read from the stream into the buffer
+	 *
+	 * @param in  stream to read from
+	 * @param dst buffer to read to
+	 * @return number of bytes read or -1 at the end of the stream
+	 * @throws IOException if the stream fails
+	 */
+	public static int read(InputStream in, ByteBuffer dst) throws IOException {
+		if (dst.hasArray()) {
+			int n = in.read(dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+			if (n > 0) {
+				dst.position(dst.position() + n);
+			}
+			return n;
+		}
+		byte[] b = transfer.get();
+		int n = in.read(b, 0, Math.min(b.length, dst.remaining()));
+		if (n > 0) {
+			dst.put(b, 0, n);
+		}
+		return n;
+	}
+
+	/**
+	 * Write the remaining bytes of the buffer to the stream
+	 *
+	 * @param out stream to write to
+	 * @param src buffer to write
+	 * @return number of bytes written
+	 * @throws IOException if the stream fails
+	 */
+	public static int write(OutputStream out, ByteBuffer src) throws IOException {
+		int len = src.remaining();
+		if (src.hasArray()) {
+			out.write(src.array(), src.arrayOffset() + src.position(), len);
+			src.position(src.limit());
+			return len;
+		}
+		byte[] b = transfer.get();
+		while (src.hasRemaining()) {
+			int n = Math.min(b.length, src.remaining());
+			src.get(b, 0, n);
+			out.write(b, 0, n);
+		}
+		return len;
+	}
+
+	/**
+	 * Get channel which reads from the stream
+	 *
+	 * @param in stream to read from
+	 * @return the stream itself if it is a channel, otherwise a channel over it
+	 */
+	public static ReadableByteChannel newChannel(final InputStream in) {
+		if (in instanceof ReadableByteChannel) {
+			return (ReadableByteChannel) in;
+		}
+		return new ReadableByteChannel() {
+			private boolean open = true;
+
+			public int read(ByteBuffer dst) throws IOException {
+				return HdfsChannels.read(in, dst);
+			}
+
+			public boolean isOpen() {
+				return open;
+			}
+
+			public void close() throws IOException {
+				open = false;
+				in.close();
+			}
+		};
+	}
+
+	/**
+	 * Get channel which writes to the stream
+	 *
+	 * @param out stream to write to
+	 * @return channel over the stream
+	 */
+	public static WritableByteChannel newChannel(final OutputStream out) {
+		return new WritableByteChannel() {
+			private boolean open = true;
+
+			public int write(ByteBuffer src) throws IOException {
+				return HdfsChannels.write(out, src);
+			}
+
+			public boolean isOpen() {
+				return open;
+			}
+
+			public void close() throws IOException {
+				open = false;
+				out.close();
+			}
+		};
+	}
+}
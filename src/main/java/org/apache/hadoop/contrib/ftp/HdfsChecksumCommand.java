@@ -0,0 +1,250 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.interfaces.FtpIoSession;
+import org.apache.ftpserver.interfaces.FtpServerContext;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.CRC32;
+
+/**
+ * XMD5, XSHA256 and XCRC commands. The checksum of the whole file or of a byte range
+ * is computed on the server by the bounded checksum executor, HASH uses the same executor.
+ * Argument is the file name optionally followed by the start and the end (exclusive) offsets
+ */
+public class HdfsChecksumCommand extends HdfsCommand {
+
+	private final Logger log = LoggerFactory.getLogger(HdfsChecksumCommand.class);
+
+	private static final int BUFFER_SIZE = 256 * 1024;
+
+	/**
+	 * Checksum algorithm
+	 */
+	public enum Algorithm {
+		SHA1("SHA-1"), SHA256("SHA-256"), SHA512("SHA-512"), MD5("MD5"), CRC32("CRC32");
+
+		private final String name;
+
+		Algorithm(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Get name of the algorithm as used by the HASH command
+		 *
+		 * @return algorithm name
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Find algorithm by its name
+		 *
+		 * @param name algorithm name, case insensitive
+		 * @return algorithm or null if there is no such algorithm
+		 */
+		public static Algorithm forName(String name) {
+			for (Algorithm algorithm : values()) {
+				if (algorithm.name.equalsIgnoreCase(name)) {
+					return algorithm;
+				}
+			}
+			return null;
+		}
+	}
+
+	private final Algorithm algorithm;
+
+	/**
+	 * Constructs the command
+	 *
+	 * @param algorithm checksum algorithm
+	 */
+	public HdfsChecksumCommand(Algorithm algorithm) {
+		this.algorithm = algorithm;
+	}
+
+	public void execute(FtpIoSession session, FtpServerContext context, FtpRequest request)
+			throws IOException, FtpException {
+		session.resetState();
+
+		String argument = request.getArgument();
+		if (argument == null || argument.trim().length() == 0) {
+			reply(session, FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+					"Syntax error in parameters or arguments.");
+			return;
+		}
+
+		// offsets are taken from the end, the file name may contain spaces
+		String fileName = argument.trim();
+		long[] offsets = new long[2];
+		int count = 0;
+		while (count < 2) {
+			int pos = fileName.lastIndexOf(' ');
+			if (pos < 0 || !isNumber(fileName.substring(pos + 1))) {
+				break;
+			}
+			offsets[count++] = Long.parseLong(fileName.substring(pos + 1));
+			fileName = fileName.substring(0, pos).trim();
+		}
+		if (fileName.length() > 1 && fileName.startsWith("\"") && fileName.endsWith("\"")) {
+			fileName = fileName.substring(1, fileName.length() - 1);
+		}
+
+		HdfsFileObject file = getHdfsFileObject(session, fileName);
+		if (file == null || !file.isFile()) {
+			reply(session, FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN, "No such file.");
+			return;
+		}
+		if (!file.hasReadPermission()) {
+			reply(session, FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN, "Permission denied.");
+			return;
+		}
+
+		long len = file.getSize();
+		long start = 0;
+		long end = len;
+		if (count == 1) {
+			start = offsets[0];
+		} else if (count == 2) {
+			start = offsets[1];
+			end = offsets[0];
+		}
+		if (start < 0 || start > end || end > len) {
+			reply(session, FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+					"Invalid range " + start + "-" + end + ", file length is " + len + ".");
+			return;
+		}
+
+		Future<String> result;
+		try {
+			result = submit(file, algorithm, start, end);
+		} catch (RejectedExecutionException e) {
+			reply(session, FtpReply.REPLY_450_REQUESTED_FILE_ACTION_NOT_TAKEN,
+					"Too many checksums in progress, try again later.");
+			return;
+		}
+
+		try {
+			reply(session, FtpReply.REPLY_250_REQUESTED_FILE_ACTION_OKAY, result.get());
+		} catch (InterruptedException e) {
+			result.cancel(true);
+			reply(session, FtpReply.REPLY_451_REQUESTED_ACTION_ABORTED, "Checksum interrupted.");
+		} catch (ExecutionException e) {
+			log.debug("Checksum of " + file.getFullName() + " failed", e.getCause());
+			reply(session, FtpReply.REPLY_451_REQUESTED_ACTION_ABORTED,
+					"Checksum failed: " + e.getCause().getMessage());
+		}
+	}
+
+	private static boolean isNumber(String s) {
+		if (s.length() == 0 || s.length() > 18) {
+			return false;
+		}
+		for (int i = 0; i < s.length(); i++) {
+			if (!Character.isDigit(s.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Start computing checksum of a range of the file on the checksum executor
+	 *
+	 * @param file      file to read
+	 * @param algorithm checksum algorithm
+	 * @param start     offset of the first byte
+	 * @param end       offset after the last byte
+	 * @return checksum as a hex string
+	 * @throws RejectedExecutionException if too many checksums are in progress
+	 */
+	static Future<String> submit(HdfsFileObject file, Algorithm algorithm, long start, long end) {
+		return HdfsOverFtpSystem.getChecksumExecutor().submit(new Checksum(file, algorithm, start, end));
+	}
+
+	/**
+	 * Reads the range of the file and computes its checksum as a hex string
+	 */
+	private static class Checksum implements Callable<String> {
+
+		private final HdfsFileObject file;
+		private final Algorithm algorithm;
+		private final long start;
+		private final long end;
+
+		private Checksum(HdfsFileObject file, Algorithm algorithm, long start, long end) {
+			this.file = file;
+			this.algorithm = algorithm;
+			this.start = start;
+			this.end = end;
+		}
+
+		public String call() throws IOException, NoSuchAlgorithmException {
+			MessageDigest digest = null;
+			CRC32 crc = null;
+			if (algorithm == Algorithm.CRC32) {
+				crc = new CRC32();
+			} else {
+				digest = MessageDigest.getInstance(algorithm.getName());
+			}
+
+			byte[] buf = new byte[BUFFER_SIZE];
+			FSDataInputStream in = file.open(start);
+			try {
+				long remaining = end - start;
+				while (remaining > 0) {
+					if (Thread.interrupted()) {
+						throw new IOException("Checksum cancelled");
+					}
+					int n = in.read(buf, 0, (int) Math.min(buf.length, remaining));
+					if (n < 0) {
+						throw new IOException("Unexpected end of file " + file.getFullName());
+					}
+					if (crc != null) {
+						crc.update(buf, 0, n);
+					} else {
+						digest.update(buf, 0, n);
+					}
+					remaining -= n;
+				}
+			} finally {
+				in.close();
+			}
+
+			if (crc != null) {
+				String hex = Long.toHexString(crc.getValue()).toUpperCase();
+				return "00000000".substring(hex.length()) + hex;
+			}
+			return toHex(digest.digest());
+		}
+	}
+
+	/**
+	 * Format bytes as a lower case hex string
+	 *
+	 * @param bytes bytes to format
+	 * @return hex string
+	 */
+	static String toHex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+			sb.append(Character.forDigit(b & 0xf, 16));
+		}
+		return sb.toString();
+	}
+}
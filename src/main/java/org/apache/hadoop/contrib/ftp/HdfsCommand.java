@@ -0,0 +1,90 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.apache.ftpserver.ftplet.DefaultFtpReply;
+import org.apache.ftpserver.ftplet.FileObject;
+import org.apache.ftpserver.ftplet.FileSystemView;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.interfaces.Command;
+import org.apache.ftpserver.interfaces.FtpIoSession;
+
+import java.io.Closeable;
+
+/**
+ * Base class of the commands which work with HdfsFileObject directly
+ */
+public abstract class HdfsCommand implements Command {
+
+	// set when the running command has sent a preliminary reply, e.g. 150 before a transfer
+	private static final String PRELIMINARY_SENT = "org.apache.hadoop.contrib.ftp.preliminary-sent";
+
+	/**
+	 * Send reply to the client
+	 *
+	 * @param session ftp session
+	 * @param code    reply code
+	 * @param message reply message
+	 */
+	protected void reply(FtpIoSession session, int code, String message) {
+		if (code < 200) {
+			session.setAttribute(PRELIMINARY_SENT, Boolean.TRUE);
+		}
+		session.write(new DefaultFtpReply(code, message));
+	}
+
+	/**
+	 * Check if the running command has sent a preliminary reply and forget it
+	 *
+	 * @param session ftp session
+	 * @return true if a 1xx reply was sent since the last call
+	 */
+	protected static boolean takePreliminarySent(FtpIoSession session) {
+		return session.removeAttribute(PRELIMINARY_SENT) != null;
+	}
+
+	/**
+	 * Close a stream ignoring errors
+	 *
+	 * @param stream stream to close, may be null
+	 */
+	protected void closeQuietly(Closeable stream) {
+		if (stream != null) {
+			try {
+				stream.close();
+			} catch (Exception e) {
+				// ignore
+			}
+		}
+	}
+
+	/**
+	 * Resolve file name of the request
+	 *
+	 * @param session  ftp session
+	 * @param fileName file name from the request, current directory is used if it is null
+	 * @return file object
+	 * @throws FtpException if the file system view fails
+	 */
+	protected FileObject getFileObject(FtpIoSession session, String fileName) throws FtpException {
+		FileSystemView view = session.getFileSystemView();
+		if (fileName == null || fileName.length() == 0) {
+			return view.getCurrentDirectory();
+		}
+		return view.getFileObject(fileName);
+	}
+
+	/**
+	 * Resolve file name of the request to HdfsFileObject
+	 *
+	 * @param session  ftp session
+	 * @param fileName file name from the request, current directory is used if it is null
+	 * @return file object or null if the name doesn't belong to HDFS
+	 * @throws FtpException if the file system view fails
+	 */
+	protected HdfsFileObject getHdfsFileObject(FtpIoSession session, String fileName) throws FtpException {
+		FileObject file = getFileObject(session, fileName);
+		if (file instanceof HdfsFileObject) {
+			return (HdfsFileObject) file;
+		}
+		return null;
+	}
+}
@@ -0,0 +1,80 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.apache.ftpserver.DefaultCommandFactory;
+import org.apache.ftpserver.interfaces.Command;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Extended DefaultCommandFactory to replace some of the standard commands
+ * with implementations which work with HDFS directly
+ */
+public class HdfsCommandFactory extends DefaultCommandFactory {
+
+	private final Map<String, Command> hdfsCommands = new HashMap<String, Command>();
+
+	// standard commands wrapped to answer 450 when HDFS is busy
+	private final Map<String, Command> guardedCommands = new HashMap<String, Command>();
+
+	public HdfsCommandFactory() {
+		hdfsCommands.put("LIST", new HdfsListCommand(HdfsListCommand.Format.LIST));
+		hdfsCommands.put("NLST", new HdfsListCommand(HdfsListCommand.Format.NLST));
+		hdfsCommands.put("MLSD", new HdfsListCommand(HdfsListCommand.Format.MLSD));
+		hdfsCommands.put("MLST", new HdfsMlstCommand());
+		hdfsCommands.put("RETR", new HdfsRetrCommand());
+		hdfsCommands.put("STOR", new HdfsStorCommand(HdfsStorCommand.Type.STOR));
+		hdfsCommands.put("APPE", new HdfsStorCommand(HdfsStorCommand.Type.APPE));
+		hdfsCommands.put("STOU", new HdfsStorCommand(HdfsStorCommand.Type.STOU));
+		hdfsCommands.put("RANG", new HdfsRangCommand());
+		hdfsCommands.put("MODE", new HdfsModeCommand());
+		hdfsCommands.put("SITE", new HdfsSiteCommand(super.getCommand("SITE")));
+		hdfsCommands.put("HASH", new HdfsHashCommand());
+		hdfsCommands.put("OPTS", new HdfsOptsCommand(super.getCommand("OPTS")));
+		hdfsCommands.put("XMD5", new HdfsChecksumCommand(HdfsChecksumCommand.Algorithm.MD5));
+		hdfsCommands.put("XSHA256", new HdfsChecksumCommand(HdfsChecksumCommand.Algorithm.SHA256));
+		hdfsCommands.put("XCRC", new HdfsChecksumCommand(HdfsChecksumCommand.Algorithm.CRC32));
+
+		HdfsFeatCommand feat = new HdfsFeatCommand();
+		feat.addFeature("SIZE");
+		feat.addFeature("MDTM");
+		feat.addFeature("REST STREAM");
+		feat.addFeature("RANG STREAM");
+		feat.addFeature("MLST " + HdfsMlstFormatter.FACTS);
+		feat.addFeature("UTF8");
+		feat.addFeature("EPRT");
+		feat.addFeature("EPSV");
+		feat.addFeature("MODE Z");
+		feat.addFeature("HASH");
+		feat.addFeature("XMD5");
+		feat.addFeature("XSHA256");
+		feat.addFeature("XCRC");
+		hdfsCommands.put("FEAT", feat);
+	}
+
+	/**
+	 * Get command by name. HDFS specific commands take precedence over the standard ones.
+	 * Every command is wrapped to answer 450 when HDFS is busy
+	 */
+	public Command getCommand(String cmdName) {
+		if (cmdName == null || cmdName.length() == 0) {
+			return null;
+		}
+		String name = cmdName.toUpperCase();
+		synchronized (guardedCommands) {
+			Command command = guardedCommands.get(name);
+			if (command == null) {
+				command = hdfsCommands.get(name);
+				if (command == null) {
+					command = super.getCommand(cmdName);
+				}
+				if (command == null) {
+					return null;
+				}
+				command = new HdfsBusyGuardCommand(command);
+				guardedCommands.put(name, command);
+			}
+			return command;
+		}
+	}
+}
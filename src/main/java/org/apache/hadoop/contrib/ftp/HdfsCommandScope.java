@@ -0,0 +1,108 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * File statuses fetched while one command runs. Permission checks walk the
+ * ancestors of every object they look at, the scope makes one command look up
+ * each path at most once even when the metadata cache is disabled. The scope
+ * belongs to the thread running the command and is dropped when it completes
+ */
+public class HdfsCommandScope {
+
+	private static final ThreadLocal<HdfsCommandScope> current = new ThreadLocal<HdfsCommandScope>();
+
+	// statuses by path, null value for a path which doesn't exist
+	private final Map<String, FileStatus> statuses = new HashMap<String, FileStatus>();
+
+	private int depth = 0;
+
+	/**
+	 * Start the scope of a command on the current thread, nested calls join the outer scope
+	 */
+	public static void begin() {
+		HdfsCommandScope scope = current.get();
+		if (scope == null) {
+			scope = new HdfsCommandScope();
+			current.set(scope);
+		}
+		scope.depth++;
+	}
+
+	/**
+	 * End the scope started by begin
+	 */
+	public static void end() {
+		HdfsCommandScope scope = current.get();
+		if (scope != null && --scope.depth == 0) {
+			current.remove();
+		}
+	}
+
+	/**
+	 * Checks if the status of the path is known in the current scope
+	 *
+	 * @param path path to look up
+	 * @return true if get returns the status of the path
+	 */
+	static boolean contains(Path path) {
+		HdfsCommandScope scope = current.get();
+		return scope != null && scope.statuses.containsKey(key(path));
+	}
+
+	/**
+	 * Get status of the path fetched in the current scope
+	 *
+	 * @param path path to look up
+	 * @return status or null if the path doesn't exist or is not known, see contains
+	 */
+	static FileStatus get(Path path) {
+		HdfsCommandScope scope = current.get();
+		return scope != null ? scope.statuses.get(key(path)) : null;
+	}
+
+	/**
+	 * Remember status of the path until the command completes
+	 *
+	 * @param path   path of the status
+	 * @param status status or null if the path doesn't exist
+	 */
+	static void put(Path path, FileStatus status) {
+		HdfsCommandScope scope = current.get();
+		if (scope != null) {
+			scope.statuses.put(key(path), status);
+		}
+	}
+
+	/**
+	 * Forget the path, its ancestors and everything below it after a change
+	 *
+	 * @param path created, deleted or moved path
+	 */
+	static void invalidate(Path path) {
+		HdfsCommandScope scope = current.get();
+		if (scope == null) {
+			return;
+		}
+		for (Path p = path; p != null; p = p.getParent()) {
+			scope.statuses.remove(key(p));
+		}
+		String prefix = key(path);
+		String dirPrefix = prefix.endsWith("/") ? prefix : prefix + "/";
+		Iterator<String> it = scope.statuses.keySet().iterator();
+		while (it.hasNext()) {
+			if (it.next().startsWith(dirPrefix)) {
+				it.remove();
+			}
+		}
+	}
+
+	private static String key(Path path) {
+		return path.toUri().getPath();
+	}
+}
@@ -0,0 +1,167 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.apache.ftpserver.interfaces.FtpIoSession;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterOutputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Deflate transfer mode (MODE Z). Data is compressed and decompressed as a stream
+ * with one fixed size buffer per transfer. Files which are compressed already
+ * are sent as stored deflate blocks, so the client still gets a valid deflate stream
+ */
+public class HdfsDeflate {
+
+	private static final String ZIP_MODE = "org.apache.hadoop.contrib.ftp.zip-mode";
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	// extensions of files which don't get smaller with deflate
+	private static final Set<String> COMPRESSED = new HashSet<String>(Arrays.asList(
+			"gz", "tgz", "bz2", "xz", "zip", "7z", "lz4", "lzo", "snappy", "zst",
+			"parquet", "orc", "jpg", "jpeg", "png", "mp4"));
+
+	private HdfsDeflate() {
+	}
+
+	/**
+	 * Checks if the session transfers in deflate mode
+	 *
+	 * @param session ftp session
+	 * @return true if MODE Z is set
+	 */
+	public static boolean isZipMode(FtpIoSession session) {
+		return session.getAttribute(ZIP_MODE) != null;
+	}
+
+	/**
+	 * Set transfer mode of the session
+	 *
+	 * @param session ftp session
+	 * @param zipMode true for MODE Z, false for MODE S
+	 */
+	public static void setZipMode(FtpIoSession session, boolean zipMode) {
+		if (zipMode) {
+			session.setAttribute(ZIP_MODE, Boolean.TRUE);
+		} else {
+			session.removeAttribute(ZIP_MODE);
+		}
+	}
+
+	/**
+	 * Checks if the file is compressed already, by its extension
+	 *
+	 * @param fileName name of the file
+	 * @return true if deflate would not make the file smaller
+	 */
+	public static boolean isCompressed(String fileName) {
+		int pos = fileName.lastIndexOf('.');
+		return pos >= 0 && COMPRESSED.contains(fileName.substring(pos + 1).toLowerCase());
+	}
+
+	/**
+	 * Get compression level for the file
+	 *
+	 * @param fileName name of the file
+	 * @return configured level, or no compression for compressed files
+	 */
+	private static int getLevel(String fileName) {
+		return isCompressed(fileName) ? Deflater.NO_COMPRESSION : HdfsOverFtpSystem.getCompressionLevel();
+	}
+
+	/**
+	 * Wrap a stream to read it compressed
+	 *
+	 * @param in       stream of the file
+	 * @param fileName name of the file, used to choose the compression level
+	 * @return stream of compressed data
+	 */
+	public static InputStream deflate(InputStream in, String fileName) {
+		final Deflater deflater = new Deflater(getLevel(fileName));
+		return new DeflaterInputStream(in, deflater, BUFFER_SIZE) {
+			public void close() throws IOException {
+				try {
+					super.close();
+				} finally {
+					deflater.end();
+				}
+			}
+		};
+	}
+
+	/**
+	 * Wrap a stream to write compressed data to it. Close fails with ZipException
+	 * if the compressed data ended before the end of the deflate stream
+	 *
+	 * @param out stream of the file
+	 * @return stream which takes compressed data
+	 */
+	public static OutputStream inflate(OutputStream out) {
+		final Inflater inflater = new Inflater();
+		return new InflaterOutputStream(out, inflater, BUFFER_SIZE) {
+			public void close() throws IOException {
+				try {
+					finish();
+					if (!inflater.finished()) {
+						throw new ZipException("Compressed data is truncated");
+					}
+				} finally {
+					try {
+						super.close();
+					} finally {
+						inflater.end();
+					}
+				}
+			}
+		};
+	}
+
+	/**
+	 * Compresses a text sent in several chunks, e.g. a directory listing
+	 */
+	public static class TextDeflater {
+
+		private final Deflater deflater = new Deflater(HdfsOverFtpSystem.getCompressionLevel());
+
+		private final byte[] buf = new byte[BUFFER_SIZE];
+
+		/**
+		 * Compress the next chunk of the text
+		 *
+		 * @param text   chunk of the text
+		 * @param finish true for the last chunk
+		 * @return compressed data available so far, may be empty
+		 * @throws UnsupportedEncodingException never, UTF-8 is always supported
+		 */
+		public byte[] deflate(String text, boolean finish) throws UnsupportedEncodingException {
+			deflater.setInput(text.getBytes("UTF-8"));
+			if (finish) {
+				deflater.finish();
+			}
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			while (finish ? !deflater.finished() : !deflater.needsInput()) {
+				int n = deflater.deflate(buf);
+				out.write(buf, 0, n);
+			}
+			return out.toByteArray();
+		}
+
+		/**
+		 * Release the native resources
+		 */
+		public void end() {
+			deflater.end();
+		}
+	}
+}
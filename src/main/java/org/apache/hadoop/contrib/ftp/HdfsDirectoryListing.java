@@ -0,0 +1,131 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URI;
+
+/**
+ * Listing of a directory fetched from the NameNode page by page. HDFS clients
+ * since 0.21 list directories in pages with DFSClient.listPaths(src, startAfter),
+ * each page is converted and returned as soon as it arrives, so a directory with
+ * millions of entries is never held in memory at once. The calls are made through
+ * reflection like concat, a client without them returns the whole listing as
+ * one page. Every page is a separate admitted NameNode call, only the first page
+ * is put to the metadata cache
+ */
+class HdfsDirectoryListing {
+
+	private final DistributedFileSystem dfs;
+
+	private final Path dir;
+
+	private final String userName;
+
+	private final long generation;
+
+	// DFSClient of the dfs, null if the client can't list in pages
+	private final Object client;
+
+	private final Method listPaths;
+
+	// name of the last returned entry, the listing starts after it
+	private byte[] lastName = new byte[0];
+
+	private boolean first = true;
+
+	private boolean done = false;
+
+	/**
+	 * Constructs the listing, nothing is fetched until next is called
+	 *
+	 * @param dfs      client to list with
+	 * @param dir      directory to list
+	 * @param userName user whose admission queue the calls wait in
+	 */
+	HdfsDirectoryListing(DistributedFileSystem dfs, Path dir, String userName) {
+		this.dfs = dfs;
+		this.dir = dir;
+		this.userName = userName;
+		this.generation = HdfsOverFtpSystem.getMetadataCache().getGeneration(dir);
+		Object client = null;
+		Method listPaths = null;
+		try {
+			client = dfs.getClass().getMethod("getClient").invoke(dfs);
+			listPaths = client.getClass().getMethod("listPaths", String.class, byte[].class);
+		} catch (Exception e) {
+			// HDFS 0.20 client, the directory is listed in one call
+			client = null;
+		}
+		this.client = client;
+		this.listPaths = listPaths;
+	}
+
+	/**
+	 * Fetch the next page of the listing
+	 *
+	 * @return statuses of the next entries or null if the whole directory has been listed
+	 * @throws IOException if the directory can't be listed
+	 */
+	FileStatus[] next() throws IOException {
+		if (done) {
+			return null;
+		}
+		FileStatus[] page;
+		HdfsOverFtpSystem.getAdmission().enter(userName);
+		try {
+			page = client == null ? listAll() : listPage();
+		} finally {
+			HdfsOverFtpSystem.getAdmission().exit();
+		}
+		if (page == null) {
+			done = true;
+			return null;
+		}
+		if (first) {
+			HdfsOverFtpSystem.getMetadataCache().putListing(dir, page, generation);
+			first = false;
+		}
+		return page;
+	}
+
+	private FileStatus[] listAll() throws IOException {
+		done = true;
+		return dfs.listStatus(dir);
+	}
+
+	private FileStatus[] listPage() throws IOException {
+		try {
+			Object listing = listPaths.invoke(client, dir.toUri().getPath(), lastName);
+			if (listing == null) {
+				// directory doesn't exist
+				return null;
+			}
+			Class<?> listingClass = listing.getClass();
+			Object[] entries = (Object[]) listingClass.getMethod("getPartialListing").invoke(listing);
+			if ((Boolean) listingClass.getMethod("hasMore").invoke(listing)) {
+				lastName = (byte[]) listingClass.getMethod("getLastName").invoke(listing);
+			} else {
+				done = true;
+			}
+			FileStatus[] page = new FileStatus[entries.length];
+			URI uri = dfs.getUri();
+			for (int i = 0; i < entries.length; i++) {
+				page[i] = (FileStatus) entries[i].getClass().getMethod("makeQualified", URI.class, Path.class)
+						.invoke(entries[i], uri, dir);
+			}
+			return page;
+		} catch (InvocationTargetException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Listing failed : " + dir + " : " + e.getCause());
+		} catch (Exception e) {
+			throw new IOException("Listing failed : " + dir + " : " + e);
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.interfaces.FtpIoSession;
+import org.apache.ftpserver.interfaces.FtpServerContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * FEAT command which advertises the features of the HDFS commands
+ */
+public class HdfsFeatCommand extends HdfsCommand {
+
+	private final List<String> features = new ArrayList<String>();
+
+	/**
+	 * Add feature line to the reply
+	 *
+	 * @param feature feature as it is shown to the client, "HASH" is completed with
+	 *                the algorithms of the session
+	 */
+	public void addFeature(String feature) {
+		features.add(feature);
+	}
+
+	public void execute(FtpIoSession session, FtpServerContext context, FtpRequest request)
+			throws IOException, FtpException {
+		session.resetState();
+
+		StringBuilder sb = new StringBuilder("Extensions supported\n");
+		for (String feature : features) {
+			// HASH marks the algorithm selected in this session
+			if ("HASH".equals(feature)) {
+				feature = HdfsHashCommand.getFeature(session);
+			}
+			sb.append(' ').append(feature).append('\n');
+		}
+		sb.append("End");
+		reply(session, FtpReply.REPLY_211_SYSTEM_STATUS_REPLY, sb.toString());
+	}
+}
@@ -0,0 +1,222 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Copies a file inside HDFS without passing the data through the FTP client.
+ * Segments of the source are read by parallel positional readers and written
+ * to a temporary file in order, the temporary file replaces the target when
+ * it is complete. A failed copy leaves an existing target as it was.
+ * The file is created by createOutputStream, so it gets the same owner and
+ * group as an uploaded file
+ */
+public class HdfsFileCopier {
+
+	private final static Logger log = LoggerFactory.getLogger(HdfsFileCopier.class);
+
+	private static final int SEGMENT_SIZE = 4 * 1024 * 1024;
+
+	// interval between progress reports in milliseconds
+	private static final long PROGRESS_INTERVAL = 5000;
+
+	private static class Segment {
+		private final byte[] buf;
+		private final int len;
+		private final Future<?> read;
+
+		private Segment(byte[] buf, int len, Future<?> read) {
+			this.buf = buf;
+			this.len = len;
+			this.read = read;
+		}
+	}
+
+	private final HdfsFileObject source;
+
+	private final HdfsFileObject target;
+
+	private final HdfsFileObject temp;
+
+	private final int parallelism;
+
+	private final ExecutorService executor;
+
+	private volatile long copied = 0;
+
+	private Progress progress;
+
+	/**
+	 * Receives progress reports of a copy
+	 */
+	public interface Progress {
+		/**
+		 * Called from the copying thread every few seconds
+		 *
+		 * @param copied bytes copied so far
+		 * @param total  length of the file
+		 */
+		void progress(long copied, long total);
+	}
+
+	/**
+	 * Constructs the copier
+	 *
+	 * @param source      file to copy
+	 * @param target      file to create, replaced if it exists
+	 * @param temp        file to copy into before it replaces the target
+	 * @param parallelism number of segments read at the same time
+	 * @param executor    executor to run the readers
+	 */
+	public HdfsFileCopier(HdfsFileObject source, HdfsFileObject target, HdfsFileObject temp, int parallelism,
+						  ExecutorService executor) {
+		this.source = source;
+		this.target = target;
+		this.temp = temp;
+		this.parallelism = Math.max(1, parallelism);
+		this.executor = executor;
+	}
+
+	/**
+	 * Get name of the temporary file a copy to the file is written to
+	 *
+	 * @param fileName name of the target file
+	 * @return hidden file name in the same directory
+	 */
+	public static String getTempName(String fileName) {
+		int pos = fileName.lastIndexOf('/');
+		return fileName.substring(0, pos + 1) + "." + fileName.substring(pos + 1) + ".copy.tmp";
+	}
+
+	/**
+	 * Get number of bytes copied so far
+	 *
+	 * @return copied bytes
+	 */
+	public long getCopied() {
+		return copied;
+	}
+
+	/**
+	 * Set receiver of progress reports
+	 *
+	 * @param progress receiver or null
+	 */
+	public void setProgress(Progress progress) {
+		this.progress = progress;
+	}
+
+	/**
+	 * Copy the file. The temporary file is deleted if the copy fails
+	 *
+	 * @return number of bytes copied
+	 * @throws IOException if reading or writing failed
+	 */
+	public long copy() throws IOException {
+		long len = source.getSize();
+		final FSDataInputStream in = source.open(0);
+		OutputStream out = null;
+		ArrayDeque<Segment> inFlight = new ArrayDeque<Segment>();
+		boolean done = false;
+		try {
+			if (temp.doesExist() && !temp.delete()) {
+				throw new IOException("Can't delete " + temp.getFullName());
+			}
+			out = temp.createOutputStream(0);
+			if (out == null) {
+				throw new IOException("Can't create " + temp.getFullName());
+			}
+
+			ArrayDeque<byte[]> free = new ArrayDeque<byte[]>();
+			long started = System.currentTimeMillis();
+			long lastReport = started;
+			long pos = 0;
+			while (pos < len || !inFlight.isEmpty()) {
+				while (pos < len && inFlight.size() < parallelism) {
+					final int n = (int) Math.min(SEGMENT_SIZE, len - pos);
+					final byte[] buf = free.isEmpty() ? new byte[(int) Math.min(SEGMENT_SIZE, len)] : free.poll();
+					final long position = pos;
+					Future<?> read = executor.submit(new Callable<Object>() {
+						public Object call() throws IOException {
+							in.readFully(position, buf, 0, n);
+							return null;
+						}
+					});
+					inFlight.add(new Segment(buf, n, read));
+					pos += n;
+				}
+
+				Segment segment = inFlight.poll();
+				await(segment.read);
+				out.write(segment.buf, 0, segment.len);
+				free.add(segment.buf);
+				copied += segment.len;
+
+				long now = System.currentTimeMillis();
+				if (now - lastReport >= PROGRESS_INTERVAL) {
+					lastReport = now;
+					log.info("Copying " + source.getFullName() + " to " + target.getFullName() + ": " + copied
+							+ " of " + len + " bytes (" + copied * 100 / len + "%)");
+					if (progress != null) {
+						progress.progress(copied, len);
+					}
+				}
+			}
+
+			OutputStream closing = out;
+			out = null;
+			closing.close();
+
+			// HDFS rename does not replace an existing file, the old target is deleted
+			// right before the rename so the window without a target is as short as possible
+			if (target.doesExist() && !target.delete()) {
+				throw new IOException("Can't replace " + target.getFullName());
+			}
+			if (!temp.move(target)) {
+				throw new IOException("Can't move " + temp.getFullName() + " to " + target.getFullName());
+			}
+			done = true;
+			log.info("Copied " + source.getFullName() + " to " + target.getFullName() + " (" + copied + " bytes in "
+					+ (System.currentTimeMillis() - started) + " ms)");
+			return copied;
+		} finally {
+			for (Segment segment : inFlight) {
+				segment.read.cancel(true);
+			}
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					log.debug("Can't close " + temp.getFullName(), e);
+				}
+			}
+			in.close();
+			if (!done && temp.doesExist()) {
+				temp.delete();
+			}
+		}
+	}
+
+	private static void await(Future<?> read) throws IOException {
+		try {
+			read.get();
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("Interrupted while copying");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Copy failed: " + e.getCause());
+		}
+	}
+}
@@ -4,16 +4,23 @@ import org.apache.ftpserver.ftplet.FileObject;
 import org.apache.ftpserver.ftplet.User;
 import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileChecksum;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.fs.permission.FsAction;
 import org.apache.hadoop.hdfs.DistributedFileSystem;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 /**
  * This class implements all actions to HDFS
@@ -22,9 +29,21 @@ public class HdfsFileObject implements FileObject {
 
 	private final Logger log = LoggerFactory.getLogger(HdfsFileObject.class);
 
+	// DistributedFileSystem.concat, null if HDFS client doesn't have it
+	private static final Method CONCAT = findConcat();
+
 	private Path path;
 	private HdfsUser user;
 
+	// status snapshot, fetched at most once per object unless the object is changed
+	private FileStatus status;
+
+	// result of the ancestors traverse check
+	private Boolean traversable;
+
+	// set when the read permission is already known to be granted
+	private boolean readGranted = false;
+
 	/**
 	 * Constructs HdfsFileObject from path
 	 *
@@ -36,6 +55,109 @@ public class HdfsFileObject implements FileObject {
 		this.user = (HdfsUser) user;
 	}
 
+	/**
+	 * Constructs HdfsFileObject from an already known status,
+	 * e.g. an entry of a directory listing
+	 *
+	 * @param status status of the object
+	 * @param user   accessor of the object
+	 */
+	HdfsFileObject(FileStatus status, User user) {
+		this(status.getPath().toUri().getPath(), user);
+		this.status = status;
+	}
+
+	/**
+	 * Get status of the object. The status is taken from the command scope or the
+	 * metadata cache or requested from HDFS only once and is reused by all accessors
+	 * of this object
+	 *
+	 * @return status of the object
+	 * @throws IOException if the object doesn't exist
+	 */
+	FileStatus getFileStatus() throws IOException {
+		if (status == null && HdfsCommandScope.contains(path)) {
+			status = HdfsCommandScope.get(path);
+			if (status == null) {
+				throw new FileNotFoundException("File does not exist: " + path);
+			}
+		}
+		if (status == null) {
+			final HdfsMetadataCache cache = HdfsOverFtpSystem.getMetadataCache();
+			if (cache.isMissing(path)) {
+				throw new FileNotFoundException("File does not exist: " + path);
+			}
+			status = cache.get(path);
+			if (status == null) {
+				final long generation = cache.getGeneration(path);
+				final long missingGeneration = cache.getMissingGeneration(path);
+				final DistributedFileSystem dfs = HdfsOverFtpSystem.getDfs(user);
+				// every caller is admitted in the queue of its user before it joins
+				// a coalesced call, so joining doesn't bypass the fair share of the user
+				enter();
+				try {
+					// only the caller which runs the call caches its answer, callers joining
+					// it later could cache an answer older than their own invalidations
+					status = HdfsOverFtpSystem.getCoalescer().call(coalescingKey("getFileStatus"),
+							new Callable<FileStatus>() {
+								public FileStatus call() throws IOException {
+									try {
+										FileStatus result = dfs.getFileStatus(path);
+										cache.put(path, result, generation);
+										return result;
+									} catch (FileNotFoundException e) {
+										cache.putMissing(path, missingGeneration);
+										throw e;
+									}
+								}
+							});
+				} catch (FileNotFoundException e) {
+					HdfsCommandScope.put(path, null);
+					throw e;
+				} finally {
+					exit();
+				}
+			}
+			HdfsCommandScope.put(path, status);
+		}
+		return status;
+	}
+
+	/**
+	 * Wait for admission of a NameNode call, see HdfsAdmission
+	 */
+	private void enter() {
+		HdfsOverFtpSystem.getAdmission().enter(user.getName());
+	}
+
+	/**
+	 * Finish an admitted NameNode call
+	 */
+	private void exit() {
+		HdfsOverFtpSystem.getAdmission().exit();
+	}
+
+	/**
+	 * Get key of a call for the request coalescer. Users act as themselves in proxy
+	 * users mode and may get different answers, their calls are not joined then
+	 *
+	 * @param operation name of the call
+	 * @return key of the call
+	 */
+	private String coalescingKey(String operation) {
+		String key = operation + ":" + path.toUri().getPath();
+		return HdfsOverFtpSystem.isProxyUsers() ? key + ":" + user.getName() : key;
+	}
+
+	/**
+	 * Get HDFS path of the object
+	 *
+	 * @return path of the object
+	 */
+	Path getPath() {
+		return path;
+	}
+
 	/**
 	 * Get full name of the object
 	 *
@@ -76,40 +198,24 @@ public class HdfsFileObject implements FileObject {
 	public boolean isDirectory() {
 		try {
 			log.debug("is directory? : " + path);
-			DistributedFileSystem dfs = HdfsOverFtpSystem.getDfs();
-			FileStatus fs = dfs.getFileStatus(path);
-			return fs.isDir();
+			return getFileStatus().isDir();
 		} catch (IOException e) {
 			log.debug(path + " is not dir", e);
 			return false;
 		}
 	}
 
-	/**
-	 * Get HDFS permissions
-	 *
-	 * @return HDFS permissions as a FsPermission instance
-	 * @throws IOException if path doesn't exist so we get permissions of parent object in that case
-	 */
-	private FsPermission getPermissions() throws IOException {
-//        try {
-		DistributedFileSystem dfs = HdfsOverFtpSystem.getDfs();
-		return dfs.getFileStatus(path).getPermission();
-//        } catch (IOException e) {
-//            e.printStackTrace();
-//            return null;
-//        }
-	}
-
 	/**
 	 * Checks if the object is a file
 	 *
 	 * @return true if the object is a file
 	 */
 	public boolean isFile() {
+		if (status == null && HdfsOverFtpSystem.getMetadataCache().isMissing(path)) {
+			return false;
+		}
 		try {
-			DistributedFileSystem dfs = HdfsOverFtpSystem.getDfs();
-			return dfs.isFile(path);
+			return !getFileStatus().isDir();
 		} catch (IOException e) {
 			log.debug(path + " is not file", e);
 			return false;
@@ -122,9 +228,11 @@ public class HdfsFileObject implements FileObject {
 	 * @return true if the object does exist
 	 */
 	public boolean doesExist() {
+		if (status == null && HdfsOverFtpSystem.getMetadataCache().isMissing(path)) {
+			return false;
+		}
 		try {
-			DistributedFileSystem dfs = HdfsOverFtpSystem.getDfs();
-			dfs.getFileStatus(path);
+			getFileStatus();
 			return true;
 		} catch (IOException e) {
 			//   log.debug(path + " does not exist", e);
@@ -132,46 +240,94 @@ public class HdfsFileObject implements FileObject {
 		}
 	}
 
+	/**
+	 * Checks if the user can traverse all ancestor directories of the object.
+	 * Ancestors which don't exist yet are skipped
+	 *
+	 * @return true if all existing ancestors are executable for the user
+	 */
+	boolean hasTraversePermission() {
+		if (traversable == null) {
+			boolean allowed = true;
+			for (Path parent = path.getParent(); parent != null; parent = parent.getParent()) {
+				FileStatus parentStatus;
+				try {
+					parentStatus = new HdfsFileObject(parent.toUri().getPath(), user).getFileStatus();
+				} catch (IOException e) {
+					continue;
+				}
+				if (!HdfsPermissionChecker.check(user, parentStatus, FsAction.EXECUTE)) {
+					log.debug("PERMISSIONS: {} - traverse denied at {}", path, parent);
+					allowed = false;
+					break;
+				}
+			}
+			traversable = allowed;
+		}
+		return traversable;
+	}
+
 	/**
 	 * Checks if the user has a read permission on the object
 	 *
 	 * @return true if the user can read the object
 	 */
 	public boolean hasReadPermission() {
+		if (readGranted || HdfsOverFtpSystem.isProxyUsers()) {
+			return true;
+		}
 		try {
-			FsPermission permissions = getPermissions();
-			if (user.getName().equals(getOwnerName())) {
-				if (permissions.toString().substring(0, 1).equals("r")) {
-					log.debug("PERMISSIONS: " + path + " - " + " read allowed for user");
-					return true;
-				}
-			} else if (user.isGroupMember(getGroupName())) {
-				if (permissions.toString().substring(3, 4).equals("r")) {
-					log.debug("PERMISSIONS: " + path + " - " + " read allowed for group");
-					return true;
-				}
-			} else {
-				if (permissions.toString().substring(6, 7).equals("r")) {
-					log.debug("PERMISSIONS: " + path + " - " + " read allowed for others");
-					return true;
-				}
+			if (HdfsPermissionChecker.check(user, getFileStatus(), FsAction.READ) && hasTraversePermission()) {
+				log.debug("PERMISSIONS: {} - read allowed", path);
+				return true;
 			}
-			log.debug("PERMISSIONS: " + path + " - " + " read denied");
+			log.debug("PERMISSIONS: {} - read denied", path);
 			return false;
 		} catch (IOException e) {
-			e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
+			log.debug(path + " can not be read", e);
 			return false;
 		}
 	}
 
-	private HdfsFileObject getParent() {
-		String pathS = path.toString();
-		String parentS = "/";
-		int pos = pathS.lastIndexOf("/");
-		if (pos > 0) {
-			parentS = pathS.substring(0, pos);
+	/**
+	 * Skip read permission checks of this object, the caller has checked it already
+	 */
+	void grantRead() {
+		readGranted = true;
+	}
+
+	/**
+	 * Get nearest existing ancestor of the object. Missing directories on the way
+	 * are remembered in the ancestor cache, so subsequent uploads into the same
+	 * new directory don't walk the tree again
+	 *
+	 * @return nearest existing ancestor or null if there is none
+	 */
+	private HdfsFileObject getExistingAncestor() {
+		Path parent = path.getParent();
+		if (parent == null) {
+			return null;
 		}
-		return new HdfsFileObject(parentS, user);
+		HdfsAncestorCache cache = HdfsOverFtpSystem.getAncestorCache();
+		String cached = cache.get(parent);
+		if (cached != null) {
+			return new HdfsFileObject(cached, user);
+		}
+		List<Path> missing = new ArrayList<Path>();
+		List<Long> generations = new ArrayList<Long>();
+		for (Path p = parent; p != null; p = p.getParent()) {
+			long generation = cache.getGeneration(p);
+			HdfsFileObject candidate = new HdfsFileObject(p.toUri().getPath(), user);
+			if (candidate.doesExist()) {
+				for (int i = 0; i < missing.size(); i++) {
+					cache.put(missing.get(i), p, generations.get(i));
+				}
+				return candidate;
+			}
+			missing.add(p);
+			generations.add(generation);
+		}
+		return null;
 	}
 
 	/**
@@ -180,28 +336,19 @@ public class HdfsFileObject implements FileObject {
 	 * @return true if the user has write permission on the object
 	 */
 	public boolean hasWritePermission() {
+		if (HdfsOverFtpSystem.isProxyUsers()) {
+			return true;
+		}
 		try {
-			FsPermission permissions = getPermissions();
-			if (user.getName().equals(getOwnerName())) {
-				if (permissions.toString().substring(1, 2).equals("w")) {
-					log.debug("PERMISSIONS: " + path + " - " + " write allowed for user");
-					return true;
-				}
-			} else if (user.isGroupMember(getGroupName())) {
-				if (permissions.toString().substring(4, 5).equals("w")) {
-					log.debug("PERMISSIONS: " + path + " - " + " write allowed for group");
-					return true;
-				}
-			} else {
-				if (permissions.toString().substring(7, 8).equals("w")) {
-					log.debug("PERMISSIONS: " + path + " - " + " write allowed for others");
-					return true;
-				}
+			if (HdfsPermissionChecker.check(user, getFileStatus(), FsAction.WRITE) && hasTraversePermission()) {
+				log.debug("PERMISSIONS: {} - write allowed", path);
+				return true;
 			}
-			log.debug("PERMISSIONS: " + path + " - " + " write denied");
+			log.debug("PERMISSIONS: {} - write denied", path);
 			return false;
 		} catch (IOException e) {
-			return getParent().hasWritePermission();
+			HdfsFileObject ancestor = getExistingAncestor();
+			return ancestor != null && ancestor.hasWritePermission();
 		}
 	}
 
@@ -221,9 +368,7 @@ public class HdfsFileObject implements FileObject {
 	 */
 	public String getOwnerName() {
 		try {
-			DistributedFileSystem dfs = HdfsOverFtpSystem.getDfs();
-			FileStatus fs = dfs.getFileStatus(path);
-			return fs.getOwner();
+			return getFileStatus().getOwner();
 		} catch (IOException e) {
 			e.printStackTrace();
 			return null;
@@ -237,9 +382,7 @@ public class HdfsFileObject implements FileObject {
 	 */
 	public String getGroupName() {
 		try {
-			DistributedFileSystem dfs = HdfsOverFtpSystem.getDfs();
-			FileStatus fs = dfs.getFileStatus(path);
-			return fs.getGroup();
+			return getFileStatus().getGroup();
 		} catch (IOException e) {
 			e.printStackTrace();
 			return null;
@@ -262,9 +405,7 @@ public class HdfsFileObject implements FileObject {
 	 */
 	public long getLastModified() {
 		try {
-			DistributedFileSystem dfs = HdfsOverFtpSystem.getDfs();
-			FileStatus fs = dfs.getFileStatus(path);
-			return fs.getModificationTime();
+			return getFileStatus().getModificationTime();
 		} catch (IOException e) {
 			e.printStackTrace();
 			return 0;
@@ -278,8 +419,7 @@ public class HdfsFileObject implements FileObject {
 	 */
 	public long getSize() {
 		try {
-			DistributedFileSystem dfs = HdfsOverFtpSystem.getDfs();
-			FileStatus fs = dfs.getFileStatus(path);
+			FileStatus fs = getFileStatus();
 			log.info("getSize(): " + path + " : " + fs.getLen());
 			return fs.getLen();
 		} catch (IOException e) {
@@ -288,6 +428,87 @@ public class HdfsFileObject implements FileObject {
 		}
 	}
 
+	private static Method findConcat() {
+		try {
+			return DistributedFileSystem.class.getMethod("concat", Path.class, Path[].class);
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Checks if the HDFS client can concatenate files
+	 *
+	 * @return true if concat is available
+	 */
+	static boolean isConcatSupported() {
+		return CONCAT != null;
+	}
+
+	/**
+	 * Move the blocks of the sources to the end of this file without copying data.
+	 * The sources are deleted by HDFS
+	 *
+	 * @param sources files to append, in order
+	 * @throws IOException if concat is not available or HDFS rejects the sources
+	 */
+	void concat(HdfsFileObject[] sources) throws IOException {
+		if (CONCAT == null) {
+			throw new IOException("Concat is not supported by HDFS client");
+		}
+		Path[] srcs = new Path[sources.length];
+		for (int i = 0; i < sources.length; i++) {
+			srcs[i] = sources[i].path;
+		}
+		enter();
+		try {
+			CONCAT.invoke(HdfsOverFtpSystem.getDfs(user), path, srcs);
+		} catch (InvocationTargetException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Concat failed : " + path + " : " + e.getCause());
+		} catch (IllegalAccessException e) {
+			throw new IOException("Concat failed : " + path + " : " + e);
+		} finally {
+			exit();
+			for (HdfsFileObject source : sources) {
+				removed(source.path);
+			}
+			created(path);
+		}
+	}
+
+	/**
+	 * Update caches after the path has been created with its missing parents
+	 *
+	 * @param created created path
+	 */
+	private void created(Path created) {
+		if (created.equals(path)) {
+			status = null;
+		}
+		HdfsCommandScope.invalidate(created);
+		HdfsOverFtpSystem.getMetadataCache().invalidateTree(created);
+		HdfsOverFtpSystem.getMetadataCache().clearMissing(created);
+		HdfsOverFtpSystem.getAncestorCache().invalidateCreated(created);
+	}
+
+	/**
+	 * Update caches after the path has been deleted or moved away
+	 *
+	 * @param removed removed path
+	 */
+	private void removed(Path removed) {
+		if (removed.equals(path)) {
+			status = null;
+		}
+		HdfsCommandScope.invalidate(removed);
+		HdfsOverFtpSystem.getMetadataCache().invalidateTree(removed);
+		HdfsOverFtpSystem.getAncestorCache().invalidateRemoved(removed);
+		HdfsOverFtpSystem.getReadHandleCache().invalidate(removed);
+	}
+
 	/**
 	 * Create a new dir from the object
 	 *
@@ -300,14 +521,20 @@ public class HdfsFileObject implements FileObject {
 			return false;
 		}
 
+		enter();
 		try {
-			DistributedFileSystem dfs = HdfsOverFtpSystem.getDfs();
+			DistributedFileSystem dfs = HdfsOverFtpSystem.getDfs(user);
 			dfs.mkdirs(path);
-			dfs.setOwner(path, user.getName(), user.getMainGroup());
+			if (!HdfsOverFtpSystem.isProxyUsers()) {
+				dfs.setOwner(path, user.getName(), user.getMainGroup());
+			}
+			created(path);
 			return true;
 		} catch (IOException e) {
 			e.printStackTrace();
 			return false;
+		} finally {
+			exit();
 		}
 	}
 
@@ -317,13 +544,17 @@ public class HdfsFileObject implements FileObject {
 	 * @return true if the object is deleted
 	 */
 	public boolean delete() {
+		enter();
 		try {
-			DistributedFileSystem dfs = HdfsOverFtpSystem.getDfs();
-			dfs.delete(path, true);
-			return true;
+			DistributedFileSystem dfs = HdfsOverFtpSystem.getDfs(user);
+			boolean deleted = dfs.delete(path, true);
+			removed(path);
+			return deleted;
 		} catch (IOException e) {
 			e.printStackTrace();
 			return false;
+		} finally {
+			exit();
 		}
 	}
 
@@ -334,13 +565,19 @@ public class HdfsFileObject implements FileObject {
 	 * @return true if the object is moved successfully
 	 */
 	public boolean move(FileObject fileObject) {
+		enter();
 		try {
-			DistributedFileSystem dfs = HdfsOverFtpSystem.getDfs();
-			dfs.rename(path, new Path(fileObject.getFullName()));
-			return true;
+			DistributedFileSystem dfs = HdfsOverFtpSystem.getDfs(user);
+			Path dst = new Path(fileObject.getFullName());
+			boolean moved = dfs.rename(path, dst);
+			removed(path);
+			created(dst);
+			return moved;
 		} catch (IOException e) {
 			e.printStackTrace();
 			return false;
+		} finally {
+			exit();
 		}
 	}
 
@@ -350,19 +587,15 @@ public class HdfsFileObject implements FileObject {
 	 * @return List of files in the directory
 	 */
 	public FileObject[] listFiles() {
-
-		if (!hasReadPermission()) {
-			log.debug("No read permission : " + path);
-			return null;
-		}
-
 		try {
-			DistributedFileSystem dfs = HdfsOverFtpSystem.getDfs();
-			FileStatus fileStats[] = dfs.listStatus(path);
+			FileStatus fileStats[] = listStatus();
+			if (fileStats == null) {
+				return null;
+			}
 
 			FileObject fileObjects[] = new FileObject[fileStats.length];
 			for (int i = 0; i < fileStats.length; i++) {
-				fileObjects[i] = new HdfsFileObject(fileStats[i].getPath().toString(), user);
+				fileObjects[i] = new HdfsFileObject(fileStats[i], user);
 			}
 			return fileObjects;
 		} catch (IOException e) {
@@ -371,10 +604,60 @@ public class HdfsFileObject implements FileObject {
 		}
 	}
 
+	/**
+	 * List statuses of the directory entries. The statuses are also put to the metadata cache
+	 *
+	 * @return statuses of the directory entries or null if the user can't read the directory
+	 * @throws IOException if the directory can't be listed
+	 */
+	FileStatus[] listStatus() throws IOException {
+
+		if (!hasReadPermission()) {
+			log.debug("No read permission : " + path);
+			return null;
+		}
+
+		final DistributedFileSystem dfs = HdfsOverFtpSystem.getDfs(user);
+		final HdfsMetadataCache cache = HdfsOverFtpSystem.getMetadataCache();
+		final long generation = cache.getGeneration(path);
+		enter();
+		try {
+			return HdfsOverFtpSystem.getCoalescer().call(coalescingKey("listStatus"),
+					new Callable<FileStatus[]>() {
+						public FileStatus[] call() throws IOException {
+							FileStatus[] result = dfs.listStatus(path);
+							if (result != null) {
+								cache.putListing(path, result, generation);
+							}
+							return result;
+						}
+					});
+		} finally {
+			exit();
+		}
+	}
+
+	/**
+	 * List the directory page by page, see HdfsDirectoryListing. Unlike listStatus
+	 * the calls are not coalesced, every caller gets its own pages
+	 *
+	 * @return listing of the directory or null if the user can't read the directory
+	 * @throws IOException if the HDFS client can't be initialized
+	 */
+	HdfsDirectoryListing listPages() throws IOException {
+		if (!hasReadPermission()) {
+			log.debug("No read permission : " + path);
+			return null;
+		}
+		return new HdfsDirectoryListing(HdfsOverFtpSystem.getDfs(user), path, user.getName());
+	}
+
 	/**
 	 * Creates output stream to write to the object
 	 *
-	 * @param l is not used here
+	 * @param l offset to start writing at, set by REST or APPE commands.
+	 *          A non-zero offset has to be equal to the current length of the file,
+	 *          the data is appended to the file in that case
 	 * @return OutputStream
 	 * @throws IOException
 	 */
@@ -385,32 +668,175 @@ public class HdfsFileObject implements FileObject {
 			throw new IOException("No write permission : " + path);
 		}
 
+		if (l > 0) {
+			return createAppendStream(l);
+		}
+
+		enter();
 		try {
-			DistributedFileSystem dfs = HdfsOverFtpSystem.getDfs();
+			DistributedFileSystem dfs = HdfsOverFtpSystem.getDfs(user);
 			FSDataOutputStream out = dfs.create(path);
-			dfs.setOwner(path, user.getName(), user.getMainGroup());
-			return out;
+			if (!HdfsOverFtpSystem.isProxyUsers()) {
+				dfs.setOwner(path, user.getName(), user.getMainGroup());
+			}
+			created(path);
+			return writeBehind(out);
 		} catch (IOException e) {
 			e.printStackTrace();
 			return null;
+		} finally {
+			exit();
 		}
 	}
 
 	/**
-	 * Creates input stream to read from the object
+	 * Creates output stream which appends to the existing file
 	 *
-	 * @param l is not used here
+	 * @param offset offset the client resumes from
 	 * @return OutputStream
+	 * @throws IOException if the offset doesn't match the file length or HDFS can't append
+	 */
+	private OutputStream createAppendStream(long offset) throws IOException {
+		// resume offset must be checked against the actual length
+		status = null;
+		HdfsCommandScope.invalidate(path);
+		HdfsOverFtpSystem.getMetadataCache().invalidate(path);
+		long len = getFileStatus().getLen();
+		if (offset != len) {
+			throw new IOException("Can't resume upload at " + offset + ", file length is " + len + " : " + path);
+		}
+		if (!HdfsOverFtpSystem.isAppendSupported()) {
+			throw new IOException("Append is not supported by HDFS : " + path);
+		}
+
+		DistributedFileSystem dfs = HdfsOverFtpSystem.getDfs(user);
+		FSDataOutputStream out;
+		enter();
+		try {
+			out = dfs.append(path);
+		} catch (IOException e) {
+			if (e.getMessage() != null && e.getMessage().contains("not supported")) {
+				log.warn("HDFS doesn't support append, resumed uploads are disabled", e);
+				HdfsOverFtpSystem.setAppendSupported(false);
+			}
+			throw e;
+		} finally {
+			exit();
+		}
+		created(path);
+		return writeBehind(out);
+	}
+
+	/**
+	 * Get checksum of the file computed by HDFS from the block checksums
+	 *
+	 * @return file checksum or null if HDFS doesn't provide it
+	 * @throws IOException if there is no read permission or HDFS fails
+	 */
+	FileChecksum getFileChecksum() throws IOException {
+		if (!hasReadPermission()) {
+			throw new IOException("No read permission : " + path);
+		}
+		enter();
+		try {
+			return HdfsOverFtpSystem.getDfs(user).getFileChecksum(path);
+		} finally {
+			exit();
+		}
+	}
+
+	/**
+	 * Opens the file without read-ahead, for the server side readers
+	 *
+	 * @param offset offset to start reading from
+	 * @return HDFS input stream positioned at the offset
+	 * @throws IOException if there is no read permission or HDFS fails
+	 */
+	FSDataInputStream open(long offset) throws IOException {
+		if (!hasReadPermission()) {
+			throw new IOException("No read permission : " + path);
+		}
+		FSDataInputStream in;
+		enter();
+		try {
+			in = HdfsOverFtpSystem.getDfs(user).open(path);
+		} finally {
+			exit();
+		}
+		if (offset > 0) {
+			in.seek(offset);
+		}
+		return in;
+	}
+
+	/**
+	 * Wrap HDFS output stream to write behind the data connection if it is enabled
+	 *
+	 * @param out HDFS output stream
+	 * @return stream to give to the data connection
+	 */
+	private OutputStream writeBehind(FSDataOutputStream out) {
+		int depth = HdfsOverFtpSystem.getWriteBehindDepth();
+		if (depth > 0) {
+			return new HdfsWriteBehindOutputStream(out, depth, HdfsOverFtpSystem.getWriteBehindBufferSize(),
+					HdfsOverFtpSystem.getBufferPool(), HdfsOverFtpSystem.getTransferExecutor());
+		}
+		return out;
+	}
+
+	/**
+	 * Creates input stream to read from the object
+	 *
+	 * @param l offset to start reading from, set by REST command
+	 * @return InputStream positioned at the offset
 	 * @throws IOException
 	 */
 	public InputStream createInputStream(long l) throws IOException {
+		return createInputStream(l, -1);
+	}
+
+	/**
+	 * Creates input stream to read a range of the object. Only the range is read
+	 * from HDFS, read-ahead doesn't go beyond its end
+	 *
+	 * @param offset offset to start reading from
+	 * @param length number of bytes to read, negative to read up to the end of the file
+	 * @return InputStream positioned at the offset
+	 * @throws IOException
+	 */
+	InputStream createInputStream(long offset, long length) throws IOException {
 		// permission check
 		if (!hasReadPermission()) {
 			throw new IOException("No read permission : " + path);
 		}
+		if (offset < 0 || offset > getFileStatus().getLen()) {
+			throw new IOException("Invalid restart offset " + offset + " : " + path);
+		}
 		try {
-			DistributedFileSystem dfs = HdfsOverFtpSystem.getDfs();
-			FSDataInputStream in = dfs.open(path);
+			InputStream in;
+			HdfsReadHandleCache handles = HdfsOverFtpSystem.getReadHandleCache();
+			// resolved first, the status call is admitted on its own
+			long modificationTime = handles.isEnabled() ? getFileStatus().getModificationTime() : 0;
+			enter();
+			try {
+				if (handles.isEnabled()) {
+					in = new HdfsPositionalInputStream(handles.acquire(HdfsOverFtpSystem.getDfs(user), path,
+							modificationTime), offset, length);
+				} else {
+					FSDataInputStream dataIn = HdfsOverFtpSystem.getDfs(user).open(path);
+					if (offset > 0) {
+						dataIn.seek(offset);
+					}
+					in = length >= 0 ? new HdfsRangeInputStream(dataIn, length) : dataIn;
+				}
+			} finally {
+				exit();
+			}
+			int depth = HdfsOverFtpSystem.getPrefetchDepth();
+			if (depth > 0) {
+				return new HdfsPrefetchInputStream(in, depth, HdfsOverFtpSystem.getPrefetchBufferSize(),
+						HdfsOverFtpSystem.getBufferPool(), HdfsOverFtpSystem.getTransferExecutor());
+			}
 			return in;
 		} catch (IOException e) {
 			e.printStackTrace();
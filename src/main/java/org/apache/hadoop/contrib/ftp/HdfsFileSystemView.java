@@ -5,6 +5,8 @@ import org.apache.ftpserver.ftplet.FileSystemView;
 import org.apache.ftpserver.ftplet.FtpException;
 import org.apache.ftpserver.ftplet.User;
 
+import java.io.IOException;
+
 /**
  * Implemented FileSystemView to use HdfsFileObject
  */
@@ -54,6 +56,11 @@ public class HdfsFileSystemView implements FileSystemView {
 		this.rootDir = rootDir;
 
 		this.user = user;
+		try {
+			HdfsOverFtpSystem.sessionStarted((HdfsUser) user);
+		} catch (IOException e) {
+			throw new FtpException("Can't connect to HDFS as " + user.getName(), e);
+		}
 
 
 	}
@@ -117,8 +124,9 @@ public class HdfsFileSystemView implements FileSystemView {
 	}
 
 	/**
-	 * Dispose file system view - does nothing.
+	 * Dispose file system view - releases the HDFS client of the user.
 	 */
 	public void dispose() {
+		HdfsOverFtpSystem.sessionEnded((HdfsUser) user);
 	}
 }
@@ -0,0 +1,127 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.interfaces.FtpIoSession;
+import org.apache.ftpserver.interfaces.FtpServerContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * HASH command as described in draft-bryan-ftpext-hash. The file is read on the
+ * checksum executor and hashed with the algorithm selected by OPTS HASH, SHA-1 by
+ * default. A range set by REST or RANG limits the bytes hashed. The reply is
+ * "213 algorithm start-end hash name" with the end inclusive
+ */
+public class HdfsHashCommand extends HdfsCommand {
+
+	private final Logger log = LoggerFactory.getLogger(HdfsHashCommand.class);
+
+	private static final String ALGORITHM = "org.apache.hadoop.contrib.ftp.hash-algorithm";
+
+	private static final HdfsChecksumCommand.Algorithm DEFAULT_ALGORITHM = HdfsChecksumCommand.Algorithm.SHA1;
+
+	/**
+	 * Get the algorithm selected for the session
+	 *
+	 * @param session ftp session
+	 * @return selected algorithm
+	 */
+	public static HdfsChecksumCommand.Algorithm getAlgorithm(FtpIoSession session) {
+		HdfsChecksumCommand.Algorithm algorithm = (HdfsChecksumCommand.Algorithm) session.getAttribute(ALGORITHM);
+		return algorithm == null ? DEFAULT_ALGORITHM : algorithm;
+	}
+
+	/**
+	 * Select the algorithm for the session
+	 *
+	 * @param session   ftp session
+	 * @param algorithm algorithm of the following HASH commands
+	 */
+	public static void setAlgorithm(FtpIoSession session, HdfsChecksumCommand.Algorithm algorithm) {
+		session.setAttribute(ALGORITHM, algorithm);
+	}
+
+	/**
+	 * Get the FEAT line of the session: supported algorithms separated by ';',
+	 * the selected one is marked with '*'
+	 *
+	 * @param session ftp session
+	 * @return feature line
+	 */
+	public static String getFeature(FtpIoSession session) {
+		HdfsChecksumCommand.Algorithm selected = getAlgorithm(session);
+		StringBuilder sb = new StringBuilder("HASH ");
+		for (HdfsChecksumCommand.Algorithm algorithm : HdfsChecksumCommand.Algorithm.values()) {
+			if (algorithm.ordinal() > 0) {
+				sb.append(';');
+			}
+			sb.append(algorithm.getName());
+			if (algorithm == selected) {
+				sb.append('*');
+			}
+		}
+		return sb.toString();
+	}
+
+	public void execute(FtpIoSession session, FtpServerContext context, FtpRequest request)
+			throws IOException, FtpException {
+		long start = session.getFileOffset();
+		long rangeEnd = HdfsRangCommand.takeRangeEnd(session);
+		session.resetState();
+
+		String fileName = request.getArgument();
+		if (fileName == null) {
+			reply(session, FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+					"Syntax error in parameters or arguments.");
+			return;
+		}
+
+		HdfsFileObject file = getHdfsFileObject(session, fileName);
+		if (file == null || !file.isFile()) {
+			reply(session, FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN, "No such file.");
+			return;
+		}
+		if (!file.hasReadPermission()) {
+			reply(session, FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN, "Permission denied.");
+			return;
+		}
+
+		long len = file.getSize();
+		long end = rangeEnd >= 0 ? Math.min(rangeEnd + 1, len) : len;
+		if (start > end) {
+			reply(session, FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+					"Invalid range, file length is " + len + ".");
+			return;
+		}
+
+		HdfsChecksumCommand.Algorithm algorithm = getAlgorithm(session);
+		Future<String> result;
+		try {
+			result = HdfsChecksumCommand.submit(file, algorithm, start, end);
+		} catch (RejectedExecutionException e) {
+			reply(session, FtpReply.REPLY_450_REQUESTED_FILE_ACTION_NOT_TAKEN,
+					"Too many checksums in progress, try again later.");
+			return;
+		}
+
+		try {
+			String hash = result.get();
+			reply(session, FtpReply.REPLY_213_FILE_STATUS, algorithm.getName() + " " + start + "-"
+					+ Math.max(start, end - 1) + " " + hash.toLowerCase() + " " + fileName);
+		} catch (InterruptedException e) {
+			result.cancel(true);
+			reply(session, FtpReply.REPLY_451_REQUESTED_ACTION_ABORTED, "Hash interrupted.");
+		} catch (ExecutionException e) {
+			log.debug("Hash of " + file.getFullName() + " failed", e.getCause());
+			reply(session, FtpReply.REPLY_451_REQUESTED_ACTION_ABORTED,
+					"Hash failed: " + e.getCause().getMessage());
+		}
+	}
+}
@@ -0,0 +1,246 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.apache.ftpserver.ftplet.DataConnection;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.interfaces.FtpIoSession;
+import org.apache.ftpserver.interfaces.FtpServerContext;
+import org.apache.hadoop.fs.FileStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.SocketException;
+import java.util.regex.Pattern;
+
+/**
+ * LIST, NLST and MLSD commands. Directories are listed page by page, see
+ * HdfsDirectoryListing. Lines are formatted straight from the statuses of each
+ * page and written to the data connection in chunks, so neither file objects,
+ * nor all statuses, nor the whole listing text are held in memory. LIST and NLST accept
+ * wildcards *, ? and [...] in the last component of the path, e.g. NLST *.csv
+ */
+public class HdfsListCommand extends HdfsCommand {
+
+	private final Logger log = LoggerFactory.getLogger(HdfsListCommand.class);
+
+	// listing is written to the data connection each time it grows over this size
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	/**
+	 * Format of the listing
+	 */
+	public enum Format {
+		LIST, NLST, MLSD
+	}
+
+	private final Format format;
+
+	/**
+	 * Constructs the command
+	 *
+	 * @param format format of the listing
+	 */
+	public HdfsListCommand(Format format) {
+		this.format = format;
+	}
+
+	public void execute(FtpIoSession session, FtpServerContext context, FtpRequest request)
+			throws IOException, FtpException {
+		try {
+			session.resetState();
+
+			// skip options like -la, only -l is taken into account
+			boolean longFormat = format == Format.LIST;
+			String fileName = request.getArgument();
+			while (fileName != null && fileName.startsWith("-")) {
+				int pos = fileName.indexOf(' ');
+				String options = pos < 0 ? fileName : fileName.substring(0, pos);
+				if (options.indexOf('l') > 0) {
+					longFormat = true;
+				}
+				fileName = pos < 0 ? null : fileName.substring(pos + 1).trim();
+			}
+
+			// the last component with wildcards filters the listing of its directory
+			Pattern pattern = null;
+			if (format != Format.MLSD && fileName != null) {
+				int slash = fileName.lastIndexOf('/');
+				String last = fileName.substring(slash + 1);
+				if (isWildcard(last)) {
+					pattern = toPattern(last);
+					fileName = slash < 0 ? null : slash == 0 ? "/" : fileName.substring(0, slash);
+				}
+			}
+
+			HdfsFileObject file = getHdfsFileObject(session, fileName);
+			if (file == null || !file.doesExist() || (pattern != null && !file.isDirectory())) {
+				reply(session, FtpReply.REPLY_450_REQUESTED_FILE_ACTION_NOT_TAKEN,
+						"No such file or directory.");
+				return;
+			}
+			if (!file.hasReadPermission()) {
+				reply(session, FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN, "Permission denied.");
+				return;
+			}
+			if (format == Format.MLSD && !file.isDirectory()) {
+				reply(session, FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+						"Not a directory.");
+				return;
+			}
+
+			reply(session, FtpReply.REPLY_150_FILE_STATUS_OKAY,
+					"File status okay; about to open data connection.");
+
+			DataConnection dataConnection;
+			try {
+				dataConnection = session.getDataConnection().openConnection();
+			} catch (Exception e) {
+				log.debug("Exception getting the output data stream", e);
+				reply(session, FtpReply.REPLY_425_CANT_OPEN_DATA_CONNECTION, "Can't open data connection.");
+				return;
+			}
+
+			HdfsDeflate.TextDeflater deflater = HdfsDeflate.isZipMode(session) ? new HdfsDeflate.TextDeflater() : null;
+			try {
+				Lines lines = new Lines(dataConnection, deflater, pattern, longFormat, (HdfsUser) session.getUser());
+				if (file.isDirectory()) {
+					HdfsDirectoryListing listing = file.listPages();
+					FileStatus[] page;
+					while (listing != null && (page = listing.next()) != null) {
+						for (FileStatus status : page) {
+							lines.add(status);
+						}
+					}
+				} else {
+					lines.add(file.getFileStatus());
+				}
+				lines.finish();
+			} catch (SocketException e) {
+				log.debug("Socket exception during list transfer", e);
+				reply(session, FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
+						"Data connection closed; transfer aborted.");
+				return;
+			} catch (IOException e) {
+				log.debug("IOException during list transfer", e);
+				reply(session, FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
+						"Requested action aborted: " + e.getMessage());
+				return;
+			} finally {
+				if (deflater != null) {
+					deflater.end();
+				}
+			}
+
+			reply(session, FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "Closing data connection.");
+		} finally {
+			session.getDataConnection().closeDataConnection();
+		}
+	}
+
+	private static boolean isWildcard(String name) {
+		return name.indexOf('*') >= 0 || name.indexOf('?') >= 0 || name.indexOf('[') >= 0;
+	}
+
+	/**
+	 * Convert a wildcard to a pattern: * matches any characters, ? matches one
+	 * character and [...] matches one of the listed characters
+	 *
+	 * @param wildcard name with wildcards
+	 * @return pattern which matches the whole name
+	 */
+	static Pattern toPattern(String wildcard) {
+		StringBuilder regex = new StringBuilder();
+		boolean inClass = false;
+		for (int i = 0; i < wildcard.length(); i++) {
+			char c = wildcard.charAt(i);
+			if (inClass) {
+				if (c == ']') {
+					inClass = false;
+					regex.append(c);
+				} else if (c == '\\' || c == '[' || c == '&') {
+					regex.append('\\').append(c);
+				} else {
+					regex.append(c);
+				}
+			} else if (c == '*') {
+				regex.append(".*");
+			} else if (c == '?') {
+				regex.append('.');
+			} else if (c == '[') {
+				int first = i + 1 < wildcard.length() && wildcard.charAt(i + 1) == '!' ? i + 2 : i + 1;
+				if (wildcard.indexOf(']', first + 1) < 0) {
+					// no closing bracket after a non-empty set, a literal [
+					regex.append(Pattern.quote("["));
+					continue;
+				}
+				inClass = true;
+				regex.append(c);
+				if (first == i + 2) {
+					regex.append('^');
+				}
+				i = first - 1;
+			} else {
+				regex.append(Pattern.quote(String.valueOf(c)));
+			}
+		}
+		return Pattern.compile(regex.toString());
+	}
+
+	/**
+	 * Lines of the listing, written to the data connection each time they grow over
+	 * the chunk size
+	 */
+	private class Lines {
+		private final DataConnection dataConnection;
+		private final HdfsDeflate.TextDeflater deflater;
+		private final Pattern pattern;
+		private final boolean longFormat;
+		private final HdfsListFormatter formatter = new HdfsListFormatter();
+		private final HdfsMlstFormatter mlstFormatter;
+		private final StringBuilder sb = new StringBuilder();
+
+		private Lines(DataConnection dataConnection, HdfsDeflate.TextDeflater deflater, Pattern pattern,
+					  boolean longFormat, HdfsUser user) {
+			this.dataConnection = dataConnection;
+			this.deflater = deflater;
+			this.pattern = pattern;
+			this.longFormat = longFormat;
+			this.mlstFormatter = new HdfsMlstFormatter(user);
+		}
+
+		private void add(FileStatus status) throws IOException {
+			if (pattern != null && !pattern.matcher(status.getPath().getName()).matches()) {
+				return;
+			}
+			if (format == Format.MLSD) {
+				mlstFormatter.formatEntry(status, sb);
+			} else if (longFormat) {
+				formatter.formatList(status, sb);
+			} else {
+				formatter.formatName(status, sb);
+			}
+			if (sb.length() >= CHUNK_SIZE) {
+				send(false);
+			}
+		}
+
+		private void finish() throws IOException {
+			if (sb.length() > 0 || deflater != null) {
+				send(true);
+			}
+		}
+
+		/**
+		 * Send a chunk of the listing, compressed in MODE Z
+		 */
+		private void send(boolean last) throws IOException {
+			String text = sb.toString();
+			sb.setLength(0);
+			byte[] data = deflater != null ? deflater.deflate(text, last) : text.getBytes("UTF-8");
+			dataConnection.transferToClient(new ByteArrayInputStream(data));
+		}
+	}
+}
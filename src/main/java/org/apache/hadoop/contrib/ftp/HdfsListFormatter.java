@@ -0,0 +1,68 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.apache.hadoop.fs.FileStatus;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Formats directory entries for LIST and NLST replies straight from FileStatus
+ */
+public class HdfsListFormatter {
+
+	private static final long HALF_YEAR = 183L * 24 * 60 * 60 * 1000;
+
+	private final SimpleDateFormat recentFormat = new SimpleDateFormat("MMM dd HH:mm", Locale.US);
+
+	private final SimpleDateFormat oldFormat = new SimpleDateFormat("MMM dd  yyyy", Locale.US);
+
+	private final long now = System.currentTimeMillis();
+
+	private final Date date = new Date();
+
+	/**
+	 * Append unix style line of the entry
+	 *
+	 * @param status status of the entry
+	 * @param sb     buffer to append to
+	 */
+	public void formatList(FileStatus status, StringBuilder sb) {
+		sb.append(status.isDir() ? 'd' : '-');
+		sb.append(status.getPermission().toString());
+		sb.append("   ");
+		sb.append(status.isDir() ? 3 : 1);
+		sb.append(' ');
+		sb.append(status.getOwner());
+		sb.append(' ');
+		sb.append(status.getGroup());
+		sb.append(' ');
+		String len = String.valueOf(status.getLen());
+		for (int i = len.length(); i < 12; i++) {
+			sb.append(' ');
+		}
+		sb.append(len);
+		sb.append(' ');
+		long modified = status.getModificationTime();
+		date.setTime(modified);
+		if (Math.abs(now - modified) > HALF_YEAR) {
+			sb.append(oldFormat.format(date));
+		} else {
+			sb.append(recentFormat.format(date));
+		}
+		sb.append(' ');
+		sb.append(status.getPath().getName());
+		sb.append("\r\n");
+	}
+
+	/**
+	 * Append name of the entry
+	 *
+	 * @param status status of the entry
+	 * @param sb     buffer to append to
+	 */
+	public void formatName(FileStatus status, StringBuilder sb) {
+		sb.append(status.getPath().getName());
+		sb.append("\r\n");
+	}
+}
@@ -0,0 +1,379 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Server-wide cache of HDFS file statuses. Entries expire after ttl
+ * milliseconds and the least recently used entries are dropped
+ * when the cache grows over its size.
+ * Paths which are known not to exist are kept separately with a shorter ttl.
+ * <p/>
+ * Invalidations increment generations of the changed path, its parent and, for
+ * trees, of everything below it. A caller reads the generation of a path before
+ * asking HDFS and passes it to put, the answer is not cached if the path has been
+ * invalidated meanwhile, so a status fetched before a change can't be cached after
+ * it. Changes of other paths don't affect the caller, see HdfsPathGenerations.
+ * Entries below an invalidated tree are not searched for, they are dropped when
+ * they are looked up
+ */
+public class HdfsMetadataCache {
+
+	private final long ttl;
+
+	private final int maxEntries;
+
+	private final LinkedHashMap<String, Entry> entries;
+
+	private final long missingTtl;
+
+	// paths known not to exist, entries without status
+	private final LinkedHashMap<String, Entry> missing;
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private final AtomicLong missingHits = new AtomicLong();
+
+	// generations of the entries, changed under the lock of the entries
+	private final HdfsPathGenerations generations = new HdfsPathGenerations();
+
+	// generations of the missing paths, changed under the lock of the missing paths
+	private final HdfsPathGenerations missingGenerations = new HdfsPathGenerations();
+
+	// one listing may fill at most this part of the cache
+	private static final int LISTING_SHARE = 8;
+
+	private static class Entry {
+		private final FileStatus status;
+		private final long expires;
+		// tree generation of the path when the entry was put
+		private final long tree;
+
+		private Entry(FileStatus status, long expires, long tree) {
+			this.status = status;
+			this.expires = expires;
+			this.tree = tree;
+		}
+	}
+
+	/**
+	 * Constructs the cache
+	 *
+	 * @param ttl        time to live of an entry in milliseconds, 0 disables the cache
+	 * @param missingTtl time to live of a missing path in milliseconds, 0 disables caching of missing paths
+	 * @param maxEntries maximum number of entries, 0 disables the cache
+	 */
+	public HdfsMetadataCache(long ttl, long missingTtl, final int maxEntries) {
+		this.ttl = ttl;
+		this.missingTtl = missingTtl;
+		this.maxEntries = maxEntries;
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > maxEntries;
+			}
+		};
+		this.missing = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Get time to live of an entry
+	 *
+	 * @return time to live in milliseconds
+	 */
+	public long getTtl() {
+		return ttl;
+	}
+
+	private boolean isEnabled() {
+		return ttl > 0 && maxEntries > 0;
+	}
+
+	private boolean isMissingEnabled() {
+		return missingTtl > 0 && maxEntries > 0;
+	}
+
+	/**
+	 * Checks if the path is known not to exist
+	 *
+	 * @param path path to look up
+	 * @return true if the path has recently been found missing
+	 */
+	public boolean isMissing(Path path) {
+		if (!isMissingEnabled()) {
+			return false;
+		}
+		String key = key(path);
+		synchronized (missing) {
+			Entry entry = missing.get(key);
+			if (entry == null) {
+				return false;
+			}
+			if (entry.expires > System.currentTimeMillis() && entry.tree == missingGenerations.getTree(key)) {
+				missingHits.incrementAndGet();
+				return true;
+			}
+			missing.remove(key);
+			return false;
+		}
+	}
+
+	/**
+	 * Remember that the path doesn't exist
+	 *
+	 * @param path missing path
+	 */
+	public void putMissing(Path path) {
+		putMissing(path, -1);
+	}
+
+	/**
+	 * Remember that the path doesn't exist unless the path has been created
+	 * since the generation was read
+	 *
+	 * @param path       missing path
+	 * @param generation generation read by getMissingGeneration before HDFS was asked,
+	 *                   -1 to skip the check
+	 */
+	public void putMissing(Path path, long generation) {
+		if (!isMissingEnabled()) {
+			return;
+		}
+		String key = key(path);
+		long expires = System.currentTimeMillis() + missingTtl;
+		synchronized (missing) {
+			if (generation < 0 || generation == missingGenerations.get(key)) {
+				missing.put(key, new Entry(null, expires, missingGenerations.getTree(key)));
+			}
+		}
+	}
+
+	/**
+	 * Get current generation of the path, see put
+	 *
+	 * @param path path which is going to be looked up or listed
+	 * @return generation
+	 */
+	public long getGeneration(Path path) {
+		return generations.get(key(path));
+	}
+
+	/**
+	 * Get current generation of the path, see putMissing
+	 *
+	 * @param path path which is going to be looked up
+	 * @return generation
+	 */
+	public long getMissingGeneration(Path path) {
+		return missingGenerations.get(key(path));
+	}
+
+	/**
+	 * Forget missing entries of a created path, its ancestors and everything below it
+	 *
+	 * @param path created path
+	 */
+	public void clearMissing(Path path) {
+		if (!isMissingEnabled()) {
+			return;
+		}
+		synchronized (missing) {
+			missingGenerations.touchTree(key(path));
+			for (Path p = path; p != null; p = p.getParent()) {
+				String key = key(p);
+				missingGenerations.touch(key);
+				missing.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * Get cached status of the path
+	 *
+	 * @param path path to look up
+	 * @return cached status or null if there is no valid entry
+	 */
+	public FileStatus get(Path path) {
+		if (!isEnabled()) {
+			return null;
+		}
+		String key = key(path);
+		synchronized (entries) {
+			Entry entry = entries.get(key);
+			if (entry != null) {
+				if (entry.expires > System.currentTimeMillis() && entry.tree == generations.getTree(key)) {
+					hits.incrementAndGet();
+					return entry.status;
+				}
+				entries.remove(key);
+			}
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Put status of the path to the cache
+	 *
+	 * @param path   path of the status
+	 * @param status status to cache
+	 */
+	public void put(Path path, FileStatus status) {
+		put(path, status, -1);
+	}
+
+	/**
+	 * Put status of the path to the cache unless the path has been invalidated
+	 * since the generation was read
+	 *
+	 * @param path       path of the status
+	 * @param status     status to cache
+	 * @param generation generation read by getGeneration before HDFS was asked, -1 to skip the check
+	 */
+	public void put(Path path, FileStatus status, long generation) {
+		if (!isEnabled()) {
+			return;
+		}
+		String key = key(path);
+		long expires = System.currentTimeMillis() + ttl;
+		synchronized (entries) {
+			if (generation >= 0 && generation != generations.get(key)) {
+				return;
+			}
+			entries.put(key, new Entry(status, expires, generations.getTree(key)));
+		}
+		if (isMissingEnabled()) {
+			synchronized (missing) {
+				missing.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * Put statuses of listed entries to the cache. At most an eighth of the cache
+	 * is filled by one listing, so listing a large directory doesn't push the
+	 * entries other sessions use out of the cache
+	 *
+	 * A change of an entry also invalidates its parent, so the generation of the
+	 * listed directory covers all of its entries
+	 *
+	 * @param dir        listed directory
+	 * @param statuses   statuses returned by a listing
+	 * @param generation generation of the directory read before the listing, -1 to skip the check
+	 */
+	public void putListing(Path dir, FileStatus[] statuses, long generation) {
+		if (!isEnabled()) {
+			return;
+		}
+		int count = Math.min(statuses.length, Math.max(1, maxEntries / LISTING_SHARE));
+		long expires = System.currentTimeMillis() + ttl;
+		synchronized (entries) {
+			if (generation >= 0 && generation != generations.get(key(dir))) {
+				return;
+			}
+			for (int i = 0; i < count; i++) {
+				String key = statuses[i].getPath().toUri().getPath();
+				entries.put(key, new Entry(statuses[i], expires, generations.getTree(key)));
+			}
+		}
+		if (isMissingEnabled()) {
+			synchronized (missing) {
+				for (int i = 0; i < count; i++) {
+					missing.remove(statuses[i].getPath().toUri().getPath());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Remove the path and its parent from the cache
+	 *
+	 * @param path changed path
+	 */
+	public void invalidate(Path path) {
+		if (!isEnabled()) {
+			return;
+		}
+		synchronized (entries) {
+			generations.touch(key(path));
+			entries.remove(key(path));
+			if (path.getParent() != null) {
+				generations.touch(key(path.getParent()));
+				entries.remove(key(path.getParent()));
+			}
+		}
+	}
+
+	/**
+	 * Remove the path, everything below it and its parent from the cache. Entries
+	 * below the path are not searched for, they are dropped when they are looked up
+	 *
+	 * @param path changed path, usually a deleted or moved directory
+	 */
+	public void invalidateTree(Path path) {
+		if (!isEnabled()) {
+			return;
+		}
+		synchronized (entries) {
+			generations.touchTree(key(path));
+		}
+		invalidate(path);
+	}
+
+	/**
+	 * Get number of lookups answered from the cache
+	 *
+	 * @return number of hits
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Get number of lookups that had to go to HDFS
+	 *
+	 * @return number of misses
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Get number of lookups answered from the missing paths
+	 *
+	 * @return number of missing path hits
+	 */
+	public long getMissingHits() {
+		return missingHits.get();
+	}
+
+	/**
+	 * Get current number of entries, including the ones below invalidated trees
+	 * which have not been looked up yet
+	 *
+	 * @return number of entries
+	 */
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	public String toString() {
+		return "metadata cache: size=" + size() + " hits=" + getHits() + " misses=" + getMisses()
+				+ " missing hits=" + getMissingHits();
+	}
+
+	private static String key(Path path) {
+		return path.toUri().getPath();
+	}
+}
@@ -0,0 +1,39 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.interfaces.FtpIoSession;
+import org.apache.ftpserver.interfaces.FtpServerContext;
+
+import java.io.IOException;
+
+/**
+ * MLST command. Facts of the object are sent over the control connection to users
+ * who may read it, with the same permission check as LIST
+ */
+public class HdfsMlstCommand extends HdfsCommand {
+
+	public void execute(FtpIoSession session, FtpServerContext context, FtpRequest request)
+			throws IOException, FtpException {
+		session.resetState();
+
+		HdfsFileObject file = getHdfsFileObject(session, request.getArgument());
+		if (file == null || !file.doesExist()) {
+			reply(session, FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN, "No such file or directory.");
+			return;
+		}
+		if (!file.hasReadPermission()) {
+			reply(session, FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN, "Permission denied.");
+			return;
+		}
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("Listing ").append(file.getFullName()).append('\n');
+		sb.append(' ');
+		new HdfsMlstFormatter((HdfsUser) session.getUser()).formatFacts(file.getFileStatus(), sb);
+		sb.append(file.getFullName()).append('\n');
+		sb.append("End");
+		reply(session, FtpReply.REPLY_250_REQUESTED_FILE_ACTION_OKAY, sb.toString());
+	}
+}
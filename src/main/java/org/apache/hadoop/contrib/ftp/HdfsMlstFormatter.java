@@ -0,0 +1,89 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.permission.FsAction;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Formats RFC 3659 facts of MLST and MLSD replies from a single FileStatus
+ */
+public class HdfsMlstFormatter {
+
+	/**
+	 * Facts supported by the formatter as advertised in FEAT
+	 */
+	public static final String FACTS = "type*;size*;modify*;perm*;UNIX.mode*;UNIX.owner*;UNIX.group*;";
+
+	private final HdfsUser user;
+
+	private final SimpleDateFormat modifyFormat = new SimpleDateFormat("yyyyMMddHHmmss");
+
+	private final Date date = new Date();
+
+	/**
+	 * Constructs the formatter
+	 *
+	 * @param user user the perm fact is computed for
+	 */
+	public HdfsMlstFormatter(HdfsUser user) {
+		this.user = user;
+		modifyFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+	}
+
+	/**
+	 * Append facts of the entry followed by a space
+	 *
+	 * @param status status of the entry
+	 * @param sb     buffer to append to
+	 */
+	public void formatFacts(FileStatus status, StringBuilder sb) {
+		sb.append("type=").append(status.isDir() ? "dir" : "file").append(';');
+		sb.append("size=").append(status.getLen()).append(';');
+		date.setTime(status.getModificationTime());
+		sb.append("modify=").append(modifyFormat.format(date)).append(';');
+		sb.append("perm=");
+		appendPerm(status, sb);
+		sb.append(';');
+		sb.append("UNIX.mode=0").append(Integer.toOctalString(status.getPermission().toShort())).append(';');
+		sb.append("UNIX.owner=").append(status.getOwner()).append(';');
+		sb.append("UNIX.group=").append(status.getGroup()).append(';');
+		sb.append(' ');
+	}
+
+	/**
+	 * Append MLSD line of the entry
+	 *
+	 * @param status status of the entry
+	 * @param sb     buffer to append to
+	 */
+	public void formatEntry(FileStatus status, StringBuilder sb) {
+		formatFacts(status, sb);
+		sb.append(status.getPath().getName());
+		sb.append("\r\n");
+	}
+
+	private void appendPerm(FileStatus status, StringBuilder sb) {
+		FsAction granted = HdfsPermissionChecker.getGrantedAction(user, status);
+		if (status.isDir()) {
+			if (granted.implies(FsAction.EXECUTE)) {
+				sb.append('e');
+			}
+			if (granted.implies(FsAction.READ)) {
+				sb.append('l');
+			}
+			if (granted.implies(FsAction.WRITE)) {
+				sb.append("cdfmp");
+			}
+		} else {
+			if (granted.implies(FsAction.READ)) {
+				sb.append('r');
+			}
+			if (granted.implies(FsAction.WRITE)) {
+				sb.append("adfw");
+			}
+		}
+	}
+}
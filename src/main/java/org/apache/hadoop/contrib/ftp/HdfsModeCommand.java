@@ -0,0 +1,38 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.interfaces.FtpIoSession;
+import org.apache.ftpserver.interfaces.FtpServerContext;
+
+import java.io.IOException;
+
+/**
+ * MODE command. Stream mode (S) and deflate mode (Z) are supported
+ */
+public class HdfsModeCommand extends HdfsCommand {
+
+	public void execute(FtpIoSession session, FtpServerContext context, FtpRequest request)
+			throws IOException, FtpException {
+		session.resetState();
+
+		String mode = request.getArgument();
+		if (mode == null || mode.trim().length() == 0) {
+			reply(session, FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+					"Syntax error in parameters or arguments.");
+			return;
+		}
+		mode = mode.trim().toUpperCase();
+		if ("S".equals(mode)) {
+			HdfsDeflate.setZipMode(session, false);
+			reply(session, FtpReply.REPLY_200_COMMAND_OKAY, "Mode set to S.");
+		} else if ("Z".equals(mode)) {
+			HdfsDeflate.setZipMode(session, true);
+			reply(session, FtpReply.REPLY_200_COMMAND_OKAY, "Mode set to Z.");
+		} else {
+			reply(session, FtpReply.REPLY_504_COMMAND_NOT_IMPLEMENTED_FOR_THAT_PARAMETER,
+					"Mode " + mode + " not supported.");
+		}
+	}
+}
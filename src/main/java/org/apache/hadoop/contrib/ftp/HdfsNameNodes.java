@@ -0,0 +1,347 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * NameNode endpoints with a circuit breaker for each of them. A background probe
+ * calls every endpoint; an endpoint which fails or doesn't answer in time several
+ * times in a row is opened and not used until a later probe succeeds. Sessions use
+ * the active endpoint, which stays the same while its circuit is closed. When it
+ * opens, the first healthy endpoint becomes active and listeners drop clients of
+ * the old one, so sessions move over on their next call. When no endpoint is
+ * healthy, calls fail at once instead of waiting for IPC timeouts
+ */
+public class HdfsNameNodes {
+
+	private final static Logger log = LoggerFactory.getLogger(HdfsNameNodes.class);
+
+	private static final Path PROBE_PATH = new Path("/");
+
+	/**
+	 * Creates clients which probe the endpoints
+	 */
+	public interface ProbeFactory {
+		/**
+		 * Create and initialize a client
+		 *
+		 * @param uri NameNode URI
+		 * @return new client
+		 * @throws IOException if the client can't be initialized
+		 */
+		DistributedFileSystem create(URI uri) throws IOException;
+	}
+
+	/**
+	 * Notified when the active endpoint changes
+	 */
+	public interface Listener {
+		/**
+		 * Called after failover, outside of the lock
+		 *
+		 * @param failed endpoint which is no more active
+		 * @param active new active endpoint, null if no endpoint is healthy
+		 */
+		void failover(URI failed, URI active);
+	}
+
+	private static class Endpoint {
+		private final URI uri;
+		// consecutive failures
+		private int failures = 0;
+		private boolean open = false;
+		private long openedAt = 0;
+		private DistributedFileSystem probeClient;
+		private Future<?> probe;
+
+		private Endpoint(URI uri) {
+			this.uri = uri;
+		}
+	}
+
+	private final List<Endpoint> endpoints = new ArrayList<Endpoint>();
+
+	private final int failureThreshold;
+
+	private final long probeTimeout;
+
+	private final ProbeFactory factory;
+
+	private final List<Listener> listeners = new ArrayList<Listener>();
+
+	private Endpoint active;
+
+	private final Thread prober;
+
+	private final ExecutorService probeExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "hdfs-namenode-probe-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private volatile boolean closed = false;
+
+	private final AtomicInteger failovers = new AtomicInteger();
+
+	/**
+	 * Constructs the endpoints and starts the probe
+	 *
+	 * @param uris             NameNode URIs in the order of preference
+	 * @param failureThreshold number of consecutive failures which open a circuit
+	 * @param probeInterval    time in milliseconds between probes, 0 disables probes
+	 * @param probeTimeout     time in milliseconds a probe may take before it counts as failed
+	 * @param factory          factory of the probe clients
+	 */
+	public HdfsNameNodes(List<URI> uris, int failureThreshold, final long probeInterval, long probeTimeout,
+						 ProbeFactory factory) {
+		if (uris.isEmpty()) {
+			throw new IllegalArgumentException("No NameNode URI");
+		}
+		for (URI uri : uris) {
+			endpoints.add(new Endpoint(uri));
+		}
+		this.failureThreshold = Math.max(1, failureThreshold);
+		this.probeTimeout = probeTimeout;
+		this.factory = factory;
+		this.active = endpoints.get(0);
+		if (probeInterval > 0) {
+			prober = new Thread(new Runnable() {
+				public void run() {
+					while (!closed) {
+						try {
+							Thread.sleep(probeInterval);
+						} catch (InterruptedException e) {
+							return;
+						}
+						probe();
+					}
+				}
+			}, "hdfs-namenode-prober");
+			prober.setDaemon(true);
+			prober.start();
+		} else {
+			prober = null;
+		}
+	}
+
+	/**
+	 * Add listener of failovers
+	 *
+	 * @param listener listener to add
+	 */
+	public synchronized void addListener(Listener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Get endpoint new clients have to connect to
+	 *
+	 * @return URI of the active NameNode
+	 * @throws IOException if no NameNode is healthy
+	 */
+	public synchronized URI getActive() throws IOException {
+		if (active == null) {
+			throw new IOException("No healthy NameNode, circuits of " + endpoints.size() + " endpoints are open");
+		}
+		return active.uri;
+	}
+
+	/**
+	 * Checks if clients of the endpoint may still be used
+	 *
+	 * @param uri NameNode URI
+	 * @return true if the endpoint is active
+	 */
+	public synchronized boolean isActive(URI uri) {
+		return active != null && active.uri.equals(uri);
+	}
+
+	/**
+	 * Probe every endpoint once, waiting for all of them at most the probe timeout
+	 */
+	private void probe() {
+		List<Endpoint> started = new ArrayList<Endpoint>();
+		List<Endpoint> hung = new ArrayList<Endpoint>();
+		for (final Endpoint endpoint : endpoints) {
+			synchronized (this) {
+				if (endpoint.probe != null && !endpoint.probe.isDone()) {
+					// the previous probe is still waiting for the NameNode
+					hung.add(endpoint);
+					continue;
+				}
+				endpoint.probe = probeExecutor.submit(new Runnable() {
+					public void run() {
+						probe(endpoint);
+					}
+				});
+			}
+			started.add(endpoint);
+		}
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(probeTimeout);
+		for (Endpoint endpoint : started) {
+			try {
+				endpoint.probe.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+				record(endpoint, null);
+			} catch (TimeoutException e) {
+				record(endpoint, "no answer in " + probeTimeout + " ms");
+			} catch (ExecutionException e) {
+				record(endpoint, String.valueOf(e.getCause().getMessage()));
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+		for (Endpoint endpoint : hung) {
+			record(endpoint, "previous probe didn't finish");
+		}
+	}
+
+	private void probe(Endpoint endpoint) {
+		DistributedFileSystem client;
+		synchronized (this) {
+			client = endpoint.probeClient;
+		}
+		try {
+			if (client == null) {
+				client = factory.create(endpoint.uri);
+				synchronized (this) {
+					endpoint.probeClient = client;
+				}
+			}
+			client.getFileStatus(PROBE_PATH);
+		} catch (IOException e) {
+			synchronized (this) {
+				if (endpoint.probeClient == client) {
+					endpoint.probeClient = null;
+				}
+			}
+			if (client != null) {
+				closeQuietly(client);
+			}
+			throw new RuntimeException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Record result of a probe and fail over if the active endpoint opened
+	 *
+	 * @param endpoint probed endpoint
+	 * @param error    reason of the failure, null if the probe succeeded
+	 */
+	private void record(Endpoint endpoint, String error) {
+		Endpoint failed = null;
+		Endpoint next = null;
+		List<Listener> toNotify;
+		synchronized (this) {
+			if (error == null) {
+				endpoint.failures = 0;
+				if (endpoint.open) {
+					endpoint.open = false;
+					log.info("NameNode " + endpoint.uri + " is healthy again after "
+							+ (System.currentTimeMillis() - endpoint.openedAt) / 1000 + " seconds");
+				}
+				if (active == null) {
+					active = endpoint;
+					log.info("NameNode " + endpoint.uri + " is active");
+				}
+				return;
+			}
+			endpoint.failures++;
+			log.warn("NameNode " + endpoint.uri + " failed probe " + endpoint.failures + ": " + error);
+			if (endpoint.open || endpoint.failures < failureThreshold) {
+				return;
+			}
+			endpoint.open = true;
+			endpoint.openedAt = System.currentTimeMillis();
+			log.warn("Circuit of NameNode " + endpoint.uri + " is open");
+			if (endpoint != active) {
+				return;
+			}
+			failed = active;
+			for (Endpoint e : endpoints) {
+				if (!e.open) {
+					next = e;
+					break;
+				}
+			}
+			active = next;
+			failovers.incrementAndGet();
+			toNotify = new ArrayList<Listener>(listeners);
+		}
+		if (next != null) {
+			log.warn("Failing over from NameNode " + failed.uri + " to " + next.uri);
+		} else {
+			log.error("No healthy NameNode, HDFS calls fail until one recovers");
+		}
+		for (Listener listener : toNotify) {
+			listener.failover(failed.uri, next != null ? next.uri : null);
+		}
+	}
+
+	/**
+	 * Get number of failovers
+	 *
+	 * @return number of times the active endpoint was abandoned
+	 */
+	public int getFailovers() {
+		return failovers.get();
+	}
+
+	/**
+	 * Stop the probe and close the probe clients
+	 */
+	public void close() {
+		closed = true;
+		if (prober != null) {
+			prober.interrupt();
+		}
+		probeExecutor.shutdownNow();
+		List<DistributedFileSystem> clients = new ArrayList<DistributedFileSystem>();
+		synchronized (this) {
+			for (Endpoint endpoint : endpoints) {
+				if (endpoint.probeClient != null) {
+					clients.add(endpoint.probeClient);
+					endpoint.probeClient = null;
+				}
+			}
+		}
+		for (DistributedFileSystem client : clients) {
+			closeQuietly(client);
+		}
+	}
+
+	private static void closeQuietly(DistributedFileSystem client) {
+		try {
+			client.close();
+		} catch (IOException e) {
+			log.debug("Can't close HDFS client", e);
+		}
+	}
+
+	public synchronized String toString() {
+		StringBuilder sb = new StringBuilder("namenodes:");
+		for (Endpoint endpoint : endpoints) {
+			sb.append(' ').append(endpoint.uri).append(endpoint.open ? "(open)" : "")
+					.append(endpoint == active ? "(active)" : "");
+		}
+		return sb.append(" failovers=").append(getFailovers()).toString();
+	}
+}
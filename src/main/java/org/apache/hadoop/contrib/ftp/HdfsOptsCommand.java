@@ -0,0 +1,60 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.interfaces.Command;
+import org.apache.ftpserver.interfaces.FtpIoSession;
+import org.apache.ftpserver.interfaces.FtpServerContext;
+
+import java.io.IOException;
+
+/**
+ * OPTS command with the HASH option. "OPTS HASH" shows the algorithm of the HASH
+ * command, "OPTS HASH algorithm" selects it. Other options are passed to the
+ * standard OPTS command
+ */
+public class HdfsOptsCommand extends HdfsCommand {
+
+	private final Command defaultOpts;
+
+	/**
+	 * Constructs the command
+	 *
+	 * @param defaultOpts standard OPTS command to handle the rest of options
+	 */
+	public HdfsOptsCommand(Command defaultOpts) {
+		this.defaultOpts = defaultOpts;
+	}
+
+	public void execute(FtpIoSession session, FtpServerContext context, FtpRequest request)
+			throws IOException, FtpException {
+		String argument = request.getArgument();
+		String option = argument == null ? "" : argument.trim();
+		String value = null;
+		int pos = option.indexOf(' ');
+		if (pos > 0) {
+			value = option.substring(pos + 1).trim();
+			option = option.substring(0, pos);
+		}
+
+		if ("HASH".equalsIgnoreCase(option)) {
+			session.resetState();
+			if (value != null && value.length() > 0) {
+				HdfsChecksumCommand.Algorithm algorithm = HdfsChecksumCommand.Algorithm.forName(value);
+				if (algorithm == null) {
+					reply(session, FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+							"Unknown algorithm, current selection not changed.");
+					return;
+				}
+				HdfsHashCommand.setAlgorithm(session, algorithm);
+			}
+			reply(session, FtpReply.REPLY_200_COMMAND_OKAY, HdfsHashCommand.getAlgorithm(session).getName());
+		} else if (defaultOpts != null) {
+			defaultOpts.execute(session, context, request);
+		} else {
+			session.resetState();
+			reply(session, FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS, "Option not supported.");
+		}
+	}
+}
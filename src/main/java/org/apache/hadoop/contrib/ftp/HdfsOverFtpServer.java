@@ -27,6 +27,12 @@ public class HdfsOverFtpServer {
 	public static void main(String[] args) throws Exception {
 		loadConfig();
 
+		Runtime.getRuntime().addShutdownHook(new Thread("hdfs-shutdown") {
+			public void run() {
+				HdfsOverFtpSystem.shutdown();
+			}
+		});
+
 		if (port != 0) {
 			startServer();
 		}
@@ -87,6 +93,60 @@ public class HdfsOverFtpServer {
 			System.exit(1);
 		}
 		HdfsOverFtpSystem.setSuperuser(superuser);
+
+		HdfsOverFtpSystem.setProxyUsers("true".equals(props.getProperty("proxy-users", "false").trim()),
+				getIntProperty(props, "user-client-idle-timeout", 300000));
+
+		HdfsOverFtpSystem.setClientProbeInterval(getIntProperty(props, "hdfs-client-probe-interval", 30000));
+
+		HdfsOverFtpSystem.setNameNodeFailover(getIntProperty(props, "namenode-failure-threshold", 3),
+				getIntProperty(props, "namenode-probe-interval", 5000),
+				getIntProperty(props, "namenode-probe-timeout", 5000));
+
+		HdfsOverFtpSystem.setAdmission(getIntProperty(props, "hdfs-max-calls", 64),
+				getIntProperty(props, "hdfs-call-timeout", 10000));
+
+		HdfsOverFtpSystem.setMetadataCache(getIntProperty(props, "metadata-cache-ttl", 5000),
+				getIntProperty(props, "negative-cache-ttl", 1000),
+				getIntProperty(props, "metadata-cache-size", 10000));
+
+		HdfsOverFtpSystem.setPrefetch(getIntProperty(props, "prefetch-depth", 4),
+				getIntProperty(props, "prefetch-buffer-size", 256 * 1024));
+
+		HdfsOverFtpSystem.setWriteBehind(getIntProperty(props, "write-behind-depth", 4),
+				getIntProperty(props, "write-behind-buffer-size", 256 * 1024));
+
+		HdfsOverFtpSystem.setBufferPool(getIntProperty(props, "buffer-pool-size", 256) * 1024L * 1024L,
+				"true".equals(props.getProperty("buffer-pool-direct", "false").trim()),
+				getIntProperty(props, "buffer-pool-wait", 1000));
+
+		HdfsOverFtpSystem.setReadHandleCache(getIntProperty(props, "read-handle-cache-size", 256),
+				getIntProperty(props, "read-handle-idle-timeout", 30000));
+
+		HdfsOverFtpSystem.setChecksumThreads(getIntProperty(props, "checksum-threads", 2));
+
+		HdfsOverFtpSystem.setCopyParallelism(getIntProperty(props, "copy-parallelism", 4));
+
+		HdfsOverFtpSystem.setCompressionLevel(getIntProperty(props, "mode-z-level", 6));
+
+		HdfsOverFtpSystem.setStatisticsLog(getIntProperty(props, "statistics-log-interval", 300000));
+	}
+
+	/**
+	 * Get optional integer property
+	 *
+	 * @param props        properties to read
+	 * @param name         name of the property
+	 * @param defaultValue value to use if the property is not set
+	 * @return value of the property
+	 */
+	private static int getIntProperty(Properties props, String name, int defaultValue) {
+		try {
+			return Integer.parseInt(props.getProperty(name).trim());
+		} catch (Exception e) {
+			log.info(name + " is not set. using default value " + defaultValue);
+			return defaultValue;
+		}
 	}
 
 	/**
@@ -117,6 +177,7 @@ public class HdfsOverFtpServer {
 		server.setUserManager(userManager);
 
 		server.setFileSystem(new HdfsFileSystemManager());
+		server.setCommandFactory(new HdfsCommandFactory());
 
 		server.start();
 	}
@@ -163,6 +224,7 @@ public class HdfsOverFtpServer {
 		server.setUserManager(userManager);
 
 		server.setFileSystem(new HdfsFileSystemManager());
+		server.setCommandFactory(new HdfsCommandFactory());
 
 
 		server.start();
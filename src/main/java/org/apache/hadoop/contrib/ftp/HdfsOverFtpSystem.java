@@ -8,31 +8,196 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Class to store DFS connection
  */
 public class HdfsOverFtpSystem {
 
-	private static DistributedFileSystem dfs = null;
+	private static HdfsSharedClient sharedClient = null;
 
+	private static long clientProbeInterval = 30000;
+
+	// users act as themselves in HDFS instead of the superuser
+	private static boolean proxyUsers = false;
+
+	private static HdfsUserClients userClients = null;
+
+	private static long userClientIdleTimeout = 300000;
+
+	// comma separated NameNode URIs
 	public static String HDFS_URI = "";
 
+	private static HdfsNameNodes nameNodes = null;
+
+	private static int nameNodeFailureThreshold = 3;
+
+	private static long nameNodeProbeInterval = 5000;
+
+	private static long nameNodeProbeTimeout = 5000;
+
 	private static String superuser = "error";
 	private static String supergroup = "supergroup";
 
 	private final static Logger log = LoggerFactory.getLogger(HdfsOverFtpSystem.class);
 
+	private static HdfsMetadataCache metadataCache = new HdfsMetadataCache(5000, 1000, 10000);
+
+	private static HdfsAncestorCache ancestorCache = new HdfsAncestorCache(5000, 10000);
+
+	// used in proxy users mode, statuses seen by one user must not be served to another
+	private static final HdfsMetadataCache disabledMetadataCache = new HdfsMetadataCache(0, 0, 0);
+
+	private static final HdfsAncestorCache disabledAncestorCache = new HdfsAncestorCache(0, 0);
+
+	// cleared when HDFS reports that append is not supported
+	private static volatile boolean appendSupported = true;
+
+	private static int prefetchDepth = 4;
+	private static int prefetchBufferSize = 256 * 1024;
+
+	private static int writeBehindDepth = 4;
+	private static int writeBehindBufferSize = 256 * 1024;
+
+	private static HdfsAdmission admission = new HdfsAdmission(0, 10000);
+
+	private static final HdfsRequestCoalescer coalescer = new HdfsRequestCoalescer();
+
+	private static HdfsReadHandleCache readHandleCache = new HdfsReadHandleCache(256, 30000);
+
+	// deflate level of MODE Z transfers
+	private static int compressionLevel = 6;
+
+	// number of segments a server side copy reads at the same time
+	private static int copyParallelism = 4;
+
+	private static HdfsBufferPool bufferPool = new HdfsBufferPool(256L * 1024 * 1024, false, 1000);
+
+	// logs statistics periodically
+	private static Timer statisticsTimer = null;
+
+	// runs background stages of data transfers
+	private static final ExecutorService transferExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "hdfs-transfer-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	// computes streaming checksums, bounded so that checksums can't take over the gateway
+	private static ThreadPoolExecutor checksumExecutor = createChecksumExecutor(2);
+
+
+	private static ThreadPoolExecutor createChecksumExecutor(int threads) {
+		return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(threads * 4), new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "hdfs-checksum-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	// creates the shared superuser client and the NameNode probes
+	private static HdfsSharedClient.ClientFactory clientFactory = new HdfsSharedClient.ClientFactory() {
+		public DistributedFileSystem create(URI uri) throws IOException {
+			return hdfsInit(uri);
+		}
+	};
 
-	private static void hdfsInit() throws IOException {
-		dfs = new DistributedFileSystem();
+	private static DistributedFileSystem hdfsInit(URI uri) throws IOException {
+		return hdfsInit(uri, superuser + "," + supergroup);
+	}
+
+	private static DistributedFileSystem hdfsInit(URI uri, String ugi) throws IOException {
+		DistributedFileSystem dfs = new DistributedFileSystem();
 		Configuration conf = new Configuration();
-		conf.set("hadoop.job.ugi", superuser + "," + supergroup);
-		try {
-			dfs.initialize(new URI(HDFS_URI), conf);
-		} catch (URISyntaxException e) {
-			log.error("DFS Initialization error", e);
+		conf.set("hadoop.job.ugi", ugi);
+		dfs.initialize(uri, conf);
+		return dfs;
+	}
+
+	private static List<URI> parseUris(String uris) throws IOException {
+		List<URI> list = new ArrayList<URI>();
+		for (String uri : uris.split(",")) {
+			if (uri.trim().length() == 0) {
+				continue;
+			}
+			try {
+				list.add(new URI(uri.trim()));
+			} catch (URISyntaxException e) {
+				log.error("DFS Initialization error", e);
+				throw new IOException("Invalid HDFS URI " + uri.trim());
+			}
+		}
+		if (list.isEmpty()) {
+			throw new IOException("HDFS URI is not set");
+		}
+		return list;
+	}
+
+	/**
+	 * Get NameNode endpoints and their circuit breakers
+	 *
+	 * @return NameNode endpoints
+	 * @throws IOException if the URIs are invalid
+	 */
+	public static synchronized HdfsNameNodes getNameNodes() throws IOException {
+		if (nameNodes == null) {
+			nameNodes = new HdfsNameNodes(parseUris(HDFS_URI), nameNodeFailureThreshold, nameNodeProbeInterval,
+					nameNodeProbeTimeout, new HdfsNameNodes.ProbeFactory() {
+				public DistributedFileSystem create(URI uri) throws IOException {
+					return clientFactory.create(uri);
+				}
+			});
+			nameNodes.addListener(new HdfsNameNodes.Listener() {
+				public void failover(URI failed, URI active) {
+					// handles belong to clients of the failed NameNode, which are closed
+					getReadHandleCache().invalidateAll();
+				}
+			});
+		}
+		return nameNodes;
+	}
+
+	private static synchronized HdfsUserClients getUserClients() throws IOException {
+		if (userClients == null) {
+			userClients = new HdfsUserClients(userClientIdleTimeout, getNameNodes(),
+					new HdfsUserClients.ClientFactory() {
+				public DistributedFileSystem create(HdfsUser user, URI uri) throws IOException {
+					StringBuilder ugi = new StringBuilder(user.getName());
+					for (String group : user.getGroups()) {
+						ugi.append(',').append(group);
+					}
+					return hdfsInit(uri, ugi.toString());
+				}
+			});
 		}
+		return userClients;
+	}
+
+	private static synchronized HdfsSharedClient getSharedClient() throws IOException {
+		if (sharedClient == null) {
+			sharedClient = new HdfsSharedClient(clientProbeInterval, getNameNodes(), clientFactory);
+		}
+		return sharedClient;
 	}
 
 	public static void setHDFS_URI(String HDFS_URI) {
@@ -40,16 +205,424 @@ public class HdfsOverFtpSystem {
 	}
 
 	/**
-	 * Get dfs
+	 * Get dfs for work which doesn't belong to a session
 	 *
 	 * @return dfs
 	 * @throws IOException
 	 */
 	public static DistributedFileSystem getDfs() throws IOException {
-		if (dfs == null) {
-			hdfsInit();
+		return getSharedClient().get();
+	}
+
+	/**
+	 * Get dfs of the logged in user
+	 *
+	 * @param user logged in user
+	 * @return dfs
+	 * @throws IOException
+	 */
+	public static DistributedFileSystem getDfs(HdfsUser user) throws IOException {
+		if (proxyUsers && user != null) {
+			return getUserClients().get(user);
 		}
-		return dfs;
+		return getSharedClient().get();
+	}
+
+	/**
+	 * Checks if users act as themselves in HDFS. Permissions are checked and owners
+	 * of new files are set by the NameNode in that case
+	 *
+	 * @return true in proxy users mode
+	 */
+	public static boolean isProxyUsers() {
+		return proxyUsers;
+	}
+
+	/**
+	 * Set proxy users mode
+	 *
+	 * @param proxyUsers  true to connect to HDFS as the ftp users
+	 * @param idleTimeout time in milliseconds after which a user client without sessions is closed
+	 */
+	public static synchronized void setProxyUsers(boolean proxyUsers, long idleTimeout) {
+		HdfsOverFtpSystem.proxyUsers = proxyUsers;
+		HdfsOverFtpSystem.userClientIdleTimeout = idleTimeout;
+	}
+
+	/**
+	 * Called when a session of the user starts
+	 *
+	 * @param user logged in user
+	 * @throws IOException if the client of the user can't be initialized
+	 */
+	public static void sessionStarted(HdfsUser user) throws IOException {
+		if (proxyUsers) {
+			getUserClients().acquire(user);
+		}
+	}
+
+	/**
+	 * Called when a session of the user ends
+	 *
+	 * @param user user of the session
+	 */
+	public static void sessionEnded(HdfsUser user) {
+		HdfsUserClients clients;
+		synchronized (HdfsOverFtpSystem.class) {
+			clients = userClients;
+		}
+		if (proxyUsers && clients != null) {
+			clients.release(user);
+		}
+	}
+
+	/**
+	 * Configure health probes of the shared HDFS client, has to be called before the first use of HDFS
+	 *
+	 * @param probeInterval time in milliseconds between health probes of the client, 0 disables probes
+	 */
+	public static synchronized void setClientProbeInterval(long probeInterval) {
+		HdfsOverFtpSystem.clientProbeInterval = probeInterval;
+	}
+
+	/**
+	 * Configure failover between NameNodes, has to be called before the first use of HDFS
+	 *
+	 * @param failureThreshold number of consecutive failed probes which open the circuit of a NameNode
+	 * @param probeInterval    time in milliseconds between probes of the NameNodes, 0 disables probes
+	 * @param probeTimeout     time in milliseconds a probe may take before it counts as failed
+	 */
+	public static synchronized void setNameNodeFailover(int failureThreshold, long probeInterval,
+														long probeTimeout) {
+		HdfsOverFtpSystem.nameNodeFailureThreshold = failureThreshold;
+		HdfsOverFtpSystem.nameNodeProbeInterval = probeInterval;
+		HdfsOverFtpSystem.nameNodeProbeTimeout = probeTimeout;
+	}
+
+	/**
+	 * Close HDFS clients and stop background executors
+	 */
+	public static synchronized void shutdown() {
+		log.info("Shutting down HDFS clients");
+		if (statisticsTimer != null) {
+			statisticsTimer.cancel();
+			statisticsTimer = null;
+		}
+		transferExecutor.shutdownNow();
+		checksumExecutor.shutdownNow();
+		closeClients();
+	}
+
+	/**
+	 * Replace the factory of the superuser client, e.g. by a fake HDFS in tests.
+	 * Clients created by the previous factory are closed
+	 *
+	 * @param factory factory of the clients
+	 */
+	static synchronized void setClientFactory(HdfsSharedClient.ClientFactory factory) {
+		closeClients();
+		clientFactory = factory;
+	}
+
+	private static synchronized void closeClients() {
+		if (sharedClient != null) {
+			sharedClient.close();
+			sharedClient = null;
+		}
+		if (userClients != null) {
+			userClients.close();
+			userClients = null;
+		}
+		if (nameNodes != null) {
+			nameNodes.close();
+			nameNodes = null;
+		}
+	}
+
+	/**
+	 * Get server-wide cache of file statuses. The cache is disabled in proxy users
+	 * mode, where the NameNode decides what each user may see
+	 *
+	 * @return metadata cache
+	 */
+	public static HdfsMetadataCache getMetadataCache() {
+		return proxyUsers ? disabledMetadataCache : metadataCache;
+	}
+
+	/**
+	 * Get server-wide cache of nearest existing ancestors of missing directories.
+	 * The cache is disabled in proxy users mode
+	 *
+	 * @return ancestor cache
+	 */
+	public static HdfsAncestorCache getAncestorCache() {
+		return proxyUsers ? disabledAncestorCache : ancestorCache;
+	}
+
+	/**
+	 * Configure metadata and ancestor caches
+	 *
+	 * @param ttl        time to live of cached entries in milliseconds
+	 * @param missingTtl time to live of cached missing paths in milliseconds
+	 * @param maxEntries maximum number of cached entries
+	 */
+	public static void setMetadataCache(long ttl, long missingTtl, int maxEntries) {
+		HdfsOverFtpSystem.metadataCache = new HdfsMetadataCache(ttl, missingTtl, maxEntries);
+		HdfsOverFtpSystem.ancestorCache = new HdfsAncestorCache(ttl, maxEntries);
+	}
+
+	/**
+	 * Checks if HDFS is known to support append
+	 *
+	 * @return false if an append has been rejected by HDFS as unsupported
+	 */
+	public static boolean isAppendSupported() {
+		return appendSupported;
+	}
+
+	/**
+	 * Set whether HDFS supports append
+	 *
+	 * @param appendSupported false to reject resumed uploads without asking HDFS
+	 */
+	public static void setAppendSupported(boolean appendSupported) {
+		HdfsOverFtpSystem.appendSupported = appendSupported;
+	}
+
+	/**
+	 * Get executor for background stages of data transfers
+	 *
+	 * @return transfer executor
+	 */
+	public static ExecutorService getTransferExecutor() {
+		return transferExecutor;
+	}
+
+	/**
+	 * Get number of buffers downloads read ahead from HDFS
+	 *
+	 * @return read-ahead depth, 0 if read-ahead is disabled
+	 */
+	public static int getPrefetchDepth() {
+		return prefetchDepth;
+	}
+
+	/**
+	 * Get size of a read-ahead buffer
+	 *
+	 * @return buffer size in bytes
+	 */
+	public static int getPrefetchBufferSize() {
+		return prefetchBufferSize;
+	}
+
+	/**
+	 * Configure read-ahead of downloads
+	 *
+	 * @param depth      number of buffers read ahead, 0 disables read-ahead
+	 * @param bufferSize size of a buffer in bytes
+	 */
+	public static void setPrefetch(int depth, int bufferSize) {
+		HdfsOverFtpSystem.prefetchDepth = depth;
+		HdfsOverFtpSystem.prefetchBufferSize = bufferSize;
+	}
+
+	/**
+	 * Get number of buffers uploads keep between the data connection and HDFS
+	 *
+	 * @return write-behind depth, 0 if write-behind is disabled
+	 */
+	public static int getWriteBehindDepth() {
+		return writeBehindDepth;
+	}
+
+	/**
+	 * Get size of a write-behind buffer
+	 *
+	 * @return buffer size in bytes
+	 */
+	public static int getWriteBehindBufferSize() {
+		return writeBehindBufferSize;
+	}
+
+	/**
+	 * Configure write-behind of uploads
+	 *
+	 * @param depth      number of buffers between the data connection and HDFS, 0 disables write-behind
+	 * @param bufferSize size of a buffer in bytes
+	 */
+	public static void setWriteBehind(int depth, int bufferSize) {
+		HdfsOverFtpSystem.writeBehindDepth = depth;
+		HdfsOverFtpSystem.writeBehindBufferSize = bufferSize;
+	}
+
+	/**
+	 * Get executor for streaming checksums. Tasks are rejected when all workers
+	 * are busy and the queue is full
+	 *
+	 * @return checksum executor
+	 */
+	public static ExecutorService getChecksumExecutor() {
+		return checksumExecutor;
+	}
+
+	/**
+	 * Set number of threads computing streaming checksums
+	 *
+	 * @param threads number of checksum threads
+	 */
+	public static void setChecksumThreads(int threads) {
+		ThreadPoolExecutor old = checksumExecutor;
+		checksumExecutor = createChecksumExecutor(Math.max(1, threads));
+		old.shutdown();
+	}
+
+	/**
+	 * Get admission of NameNode calls
+	 *
+	 * @return admission
+	 */
+	public static HdfsAdmission getAdmission() {
+		return admission;
+	}
+
+	/**
+	 * Configure admission of NameNode calls
+	 *
+	 * @param limit   maximum number of concurrent calls, 0 disables the limit
+	 * @param timeout maximum time in milliseconds a call waits for admission
+	 */
+	public static void setAdmission(int limit, long timeout) {
+		HdfsOverFtpSystem.admission = new HdfsAdmission(limit, timeout);
+	}
+
+	/**
+	 * Get coalescer of concurrent identical NameNode calls
+	 *
+	 * @return request coalescer
+	 */
+	public static HdfsRequestCoalescer getCoalescer() {
+		return coalescer;
+	}
+
+	/**
+	 * Get server-wide cache of open read handles
+	 *
+	 * @return read handle cache
+	 */
+	public static HdfsReadHandleCache getReadHandleCache() {
+		return readHandleCache;
+	}
+
+	/**
+	 * Configure cache of open read handles
+	 *
+	 * @param maxEntries  maximum number of open handles, 0 disables the cache
+	 * @param idleTimeout time in milliseconds after which an unused handle is closed
+	 */
+	public static void setReadHandleCache(int maxEntries, long idleTimeout) {
+		HdfsOverFtpSystem.readHandleCache = new HdfsReadHandleCache(maxEntries, idleTimeout);
+	}
+
+	/**
+	 * Get deflate level of MODE Z transfers
+	 *
+	 * @return compression level from 0 to 9
+	 */
+	public static int getCompressionLevel() {
+		return compressionLevel;
+	}
+
+	/**
+	 * Set deflate level of MODE Z transfers
+	 *
+	 * @param compressionLevel compression level from 0 to 9
+	 */
+	public static void setCompressionLevel(int compressionLevel) {
+		HdfsOverFtpSystem.compressionLevel = Math.max(0, Math.min(9, compressionLevel));
+	}
+
+	/**
+	 * Get number of segments a server side copy reads at the same time
+	 *
+	 * @return copy parallelism
+	 */
+	public static int getCopyParallelism() {
+		return copyParallelism;
+	}
+
+	/**
+	 * Set number of segments a server side copy reads at the same time
+	 *
+	 * @param copyParallelism copy parallelism
+	 */
+	public static void setCopyParallelism(int copyParallelism) {
+		HdfsOverFtpSystem.copyParallelism = copyParallelism;
+	}
+
+	/**
+	 * Get shared pool of transfer buffers
+	 *
+	 * @return buffer pool
+	 */
+	public static HdfsBufferPool getBufferPool() {
+		return bufferPool;
+	}
+
+	/**
+	 * Configure pool of transfer buffers
+	 *
+	 * @param ceiling maximum total size of pooled buffers in bytes
+	 * @param direct  true to use direct buffers
+	 * @param maxWait maximum time in milliseconds to wait for a free buffer
+	 */
+	public static void setBufferPool(long ceiling, boolean direct, long maxWait) {
+		HdfsOverFtpSystem.bufferPool = new HdfsBufferPool(ceiling, direct, maxWait);
+	}
+
+	/**
+	 * Get statistics of the gateway, one component per line
+	 *
+	 * @return statistics
+	 */
+	public static String getStatistics() {
+		HdfsNameNodes endpoints;
+		synchronized (HdfsOverFtpSystem.class) {
+			endpoints = nameNodes;
+		}
+		StringBuilder sb = new StringBuilder();
+		sb.append(getMetadataCache());
+		sb.append('\n').append("prefetch: hits=").append(HdfsPrefetchInputStream.getHits())
+				.append(" stalls=").append(HdfsPrefetchInputStream.getStalls());
+		sb.append('\n').append(bufferPool);
+		sb.append('\n').append(readHandleCache);
+		sb.append('\n').append(coalescer);
+		sb.append('\n').append(admission);
+		if (endpoints != null) {
+			sb.append('\n').append(endpoints);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Log statistics periodically
+	 *
+	 * @param interval time in milliseconds between two logs, 0 disables logging
+	 */
+	public static synchronized void setStatisticsLog(long interval) {
+		if (statisticsTimer != null) {
+			statisticsTimer.cancel();
+			statisticsTimer = null;
+		}
+		if (interval <= 0) {
+			return;
+		}
+		statisticsTimer = new Timer("hdfs-statistics", true);
+		statisticsTimer.schedule(new TimerTask() {
+			public void run() {
+				log.info("Statistics:\n" + getStatistics());
+			}
+		}, interval, interval);
 	}
 
 	/**
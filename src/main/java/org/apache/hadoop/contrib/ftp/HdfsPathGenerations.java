@@ -0,0 +1,76 @@
+package org.apache.hadoop.contrib.ftp;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Generations of HDFS paths for caches which must not keep an answer fetched
+ * before a change of its path. Counters are kept in a fixed number of stripes,
+ * paths sharing a stripe only invalidate each other's answers more often.
+ * Generation of a path is the sum of its own counter and the tree counters of
+ * the path and its ancestors. Every counter only grows, so a changed sum means
+ * a changed counter. Paths are keys as returned by Path.toUri().getPath()
+ */
+class HdfsPathGenerations {
+
+	private static final int STRIPES = 1024;
+
+	private final AtomicLongArray self = new AtomicLongArray(STRIPES);
+
+	private final AtomicLongArray tree = new AtomicLongArray(STRIPES);
+
+	private static int stripe(int hash) {
+		return (hash & Integer.MAX_VALUE) % STRIPES;
+	}
+
+	/**
+	 * Get generation of the path, changed by touch of the path and by touchTree
+	 * of the path or any of its ancestors
+	 *
+	 * @param key path
+	 * @return generation
+	 */
+	long get(String key) {
+		return self.get(stripe(key.hashCode())) + getTree(key);
+	}
+
+	/**
+	 * Get sum of tree counters of the path and its ancestors. Hash codes of the
+	 * ancestors are the hash codes of the key prefixes, computed in one pass
+	 *
+	 * @param key path
+	 * @return tree generation
+	 */
+	long getTree(String key) {
+		long sum = tree.get(stripe("/".hashCode()));
+		int hash = 0;
+		for (int i = 0; i < key.length(); i++) {
+			char c = key.charAt(i);
+			if (c == '/' && i > 0) {
+				sum += tree.get(stripe(hash));
+			}
+			hash = 31 * hash + c;
+		}
+		if (key.length() > 1) {
+			sum += tree.get(stripe(hash));
+		}
+		return sum;
+	}
+
+	/**
+	 * Change generation of the path
+	 *
+	 * @param key path
+	 */
+	void touch(String key) {
+		self.incrementAndGet(stripe(key.hashCode()));
+	}
+
+	/**
+	 * Change generations of the path and everything below it
+	 *
+	 * @param key path
+	 */
+	void touchTree(String key) {
+		tree.incrementAndGet(stripe(key.hashCode()));
+	}
+}
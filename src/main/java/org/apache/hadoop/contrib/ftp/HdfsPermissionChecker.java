@@ -0,0 +1,46 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.permission.FsAction;
+import org.apache.hadoop.fs.permission.FsPermission;
+
+/**
+ * Evaluates HDFS permissions of a file for an ftp user the same way
+ * the NameNode does: owner bits for the owner, group bits for
+ * the members of the group and other bits for everybody else
+ */
+public class HdfsPermissionChecker {
+
+	private HdfsPermissionChecker() {
+	}
+
+	/**
+	 * Get the actions granted to the user on the file
+	 *
+	 * @param user   accessor of the file
+	 * @param status status of the file
+	 * @return granted actions
+	 */
+	public static FsAction getGrantedAction(HdfsUser user, FileStatus status) {
+		FsPermission permission = status.getPermission();
+		if (user.getName().equals(status.getOwner())) {
+			return permission.getUserAction();
+		} else if (user.isGroupMember(status.getGroup())) {
+			return permission.getGroupAction();
+		} else {
+			return permission.getOtherAction();
+		}
+	}
+
+	/**
+	 * Checks if the user is allowed to perform the action on the file
+	 *
+	 * @param user   accessor of the file
+	 * @param status status of the file
+	 * @param action action to check
+	 * @return true if the action is allowed
+	 */
+	public static boolean check(HdfsUser user, FileStatus status, FsAction action) {
+		return getGrantedAction(user, status).implies(action);
+	}
+}
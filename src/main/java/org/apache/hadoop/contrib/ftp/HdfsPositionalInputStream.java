@@ -0,0 +1,83 @@
+package org.apache.hadoop.contrib.ftp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Input stream over a shared read handle. Every read is a positional read,
+ * so any number of these streams can read one handle at the same time.
+ * The stream is also a channel, so read-ahead fills its buffers with
+ * whole positional reads instead of small chunks
+ */
+public class HdfsPositionalInputStream extends InputStream implements ReadableByteChannel {
+
+	private final HdfsReadHandleCache.Handle handle;
+
+	private long position;
+
+	private final long end;
+
+	private boolean closed = false;
+
+	/**
+	 * Constructs the stream
+	 *
+	 * @param handle   shared handle, released when the stream is closed
+	 * @param position position to start reading from
+	 * @param length   number of bytes to read, negative to read up to the end of the file
+	 */
+	public HdfsPositionalInputStream(HdfsReadHandleCache.Handle handle, long position, long length) {
+		this.handle = handle;
+		this.position = position;
+		this.end = length < 0 ? Long.MAX_VALUE : position + length;
+	}
+
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		int n = read(b, 0, 1);
+		return n < 0 ? -1 : b[0] & 0xff;
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (closed) {
+			throw new IOException("Stream is closed");
+		}
+		if (len == 0) {
+			return 0;
+		}
+		if (position >= end) {
+			return -1;
+		}
+		int n = handle.read(position, b, off, (int) Math.min(len, end - position));
+		if (n > 0) {
+			position += n;
+		}
+		return n;
+	}
+
+	public int read(ByteBuffer dst) throws IOException {
+		return HdfsChannels.read(this, dst);
+	}
+
+	public long skip(long n) throws IOException {
+		if (n <= 0) {
+			return 0;
+		}
+		n = Math.min(n, end - position);
+		position += n;
+		return n;
+	}
+
+	public boolean isOpen() {
+		return !closed;
+	}
+
+	public void close() {
+		if (!closed) {
+			closed = true;
+			handle.release();
+		}
+	}
+}
@@ -0,0 +1,247 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Input stream which reads ahead from HDFS on a background thread.
+ * The reader fills a bounded queue of pooled buffers while the data connection
+ * drains it, so DataNode latency and socket back-pressure don't stall each other
+ */
+public class HdfsPrefetchInputStream extends InputStream {
+
+	private final static Logger log = LoggerFactory.getLogger(HdfsPrefetchInputStream.class);
+
+	// buffers taken from the queue without waiting
+	private static final AtomicLong hits = new AtomicLong();
+
+	// buffers the data connection had to wait for
+	private static final AtomicLong stalls = new AtomicLong();
+
+	private static final Chunk EOF = new Chunk(null);
+
+	private static class Chunk {
+		private final ByteBuffer buf;
+		private IOException error;
+
+		private Chunk(ByteBuffer buf) {
+			this.buf = buf;
+		}
+	}
+
+	private final InputStream in;
+
+	private final HdfsBufferPool pool;
+
+	private final BlockingQueue<ByteBuffer> free;
+
+	private final BlockingQueue<Chunk> filled;
+
+	// thread running the reader, interrupted on close
+	private Thread readerThread;
+
+	// the reader and the consumer, buffers go back to the pool when both are done
+	private final AtomicInteger owners = new AtomicInteger(2);
+
+	private volatile boolean closed = false;
+
+	private Chunk current;
+
+	/**
+	 * Constructs the stream and starts reading ahead
+	 *
+	 * @param in         stream to read from
+	 * @param depth      number of buffers read ahead
+	 * @param bufferSize size of a buffer
+	 * @param pool       pool to take buffers from
+	 * @param executor   executor to run the reader
+	 */
+	public HdfsPrefetchInputStream(InputStream in, int depth, int bufferSize, HdfsBufferPool pool,
+								   ExecutorService executor) {
+		this.in = in;
+		this.pool = pool;
+		this.free = new ArrayBlockingQueue<ByteBuffer>(depth);
+		this.filled = new ArrayBlockingQueue<Chunk>(depth + 1);
+		for (int i = 0; i < depth; i++) {
+			free.add(pool.acquire(bufferSize));
+		}
+		executor.execute(new Runnable() {
+			public void run() {
+				readAhead();
+			}
+		});
+	}
+
+	private void readAhead() {
+		synchronized (this) {
+			readerThread = Thread.currentThread();
+		}
+		ByteBuffer buf = null;
+		ReadableByteChannel channel = null;
+		try {
+			while (!closed) {
+				buf = free.take();
+				buf.clear();
+				int n = 0;
+				if (channel == null) {
+					channel = HdfsChannels.newChannel(in);
+				}
+				while (buf.hasRemaining() && (n = channel.read(buf)) >= 0) {
+				}
+				buf.flip();
+				if (buf.hasRemaining()) {
+					filled.put(new Chunk(buf));
+				} else {
+					free.put(buf);
+				}
+				buf = null;
+				if (n < 0) {
+					filled.put(EOF);
+					return;
+				}
+			}
+		} catch (InterruptedException e) {
+			// closed
+		} catch (IOException e) {
+			if (!closed) {
+				log.debug("read-ahead failed", e);
+				Chunk chunk = new Chunk(null);
+				chunk.error = e;
+				filled.offer(chunk);
+			}
+		} finally {
+			synchronized (this) {
+				readerThread = null;
+				Thread.interrupted();
+			}
+			if (buf != null) {
+				free.offer(buf);
+			}
+			done();
+		}
+	}
+
+	/**
+	 * Called by the reader and by the consumer when they are done with the buffers
+	 */
+	private void done() {
+		if (owners.decrementAndGet() == 0) {
+			if (current != null) {
+				pool.release(current.buf);
+			}
+			for (ByteBuffer buf : free) {
+				pool.release(buf);
+			}
+			for (Chunk chunk : filled) {
+				pool.release(chunk.buf);
+			}
+		}
+	}
+
+	/**
+	 * Get the next chunk, waiting for the reader if necessary
+	 *
+	 * @return false on the end of the stream
+	 * @throws IOException if reading from HDFS failed
+	 */
+	private boolean nextChunk() throws IOException {
+		if (current != null) {
+			if (current.error != null) {
+				throw current.error;
+			}
+			if (current.buf == null) {
+				return false;
+			}
+			free.offer(current.buf);
+			current = null;
+		}
+		Chunk chunk = filled.poll();
+		if (chunk != null) {
+			hits.incrementAndGet();
+		} else {
+			stalls.incrementAndGet();
+			try {
+				chunk = filled.take();
+			} catch (InterruptedException e) {
+				throw new IOException("Interrupted while waiting for HDFS data");
+			}
+		}
+		current = chunk;
+		if (chunk.error != null) {
+			throw chunk.error;
+		}
+		return chunk.buf != null;
+	}
+
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		int n = read(b, 0, 1);
+		return n < 0 ? -1 : b[0] & 0xff;
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (closed) {
+			throw new IOException("Stream is closed");
+		}
+		if (len == 0) {
+			return 0;
+		}
+		if (current == null || current.buf == null || !current.buf.hasRemaining()) {
+			if (!nextChunk()) {
+				return -1;
+			}
+		}
+		int n = Math.min(len, current.buf.remaining());
+		current.buf.get(b, off, n);
+		return n;
+	}
+
+	public int available() throws IOException {
+		return current == null || current.buf == null ? 0 : current.buf.remaining();
+	}
+
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		synchronized (this) {
+			if (readerThread != null) {
+				readerThread.interrupt();
+			}
+		}
+		try {
+			in.close();
+		} finally {
+			done();
+		}
+	}
+
+	/**
+	 * Get number of buffers the data connection got without waiting for HDFS
+	 *
+	 * @return number of prefetch hits
+	 */
+	public static long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Get number of buffers the data connection had to wait for
+	 *
+	 * @return number of prefetch stalls
+	 */
+	public static long getStalls() {
+		return stalls.get();
+	}
+}
@@ -0,0 +1,88 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.interfaces.FtpIoSession;
+import org.apache.ftpserver.interfaces.FtpServerContext;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * RANG command. "RANG start end" makes the next RETR send bytes from start
+ * to end inclusive, "RANG 1 0" clears the range. Parallel clients use it
+ * instead of REST and ABOR, so each connection reads only its slice from HDFS
+ */
+public class HdfsRangCommand extends HdfsCommand {
+
+	private static final String RANGE_END = "org.apache.hadoop.contrib.ftp.range-end";
+
+	// commands which take the range or leave it for the following transfer
+	private static final Set<String> RANGE_COMMANDS = new HashSet<String>(Arrays.asList(
+			"RANG", "REST", "RETR", "HASH"));
+
+	/**
+	 * Clear the range before a command which does not use it, so the range
+	 * can only apply to the transfer right after RANG
+	 *
+	 * @param session ftp session
+	 * @param command name of the command to run
+	 */
+	public static void clearRange(FtpIoSession session, String command) {
+		if (!RANGE_COMMANDS.contains(command)) {
+			session.removeAttribute(RANGE_END);
+		}
+	}
+
+	/**
+	 * Get the end of the range set for the next transfer and clear it
+	 *
+	 * @param session ftp session
+	 * @return last byte of the range or -1 if there is no range
+	 */
+	public static long takeRangeEnd(FtpIoSession session) {
+		Long end = (Long) session.removeAttribute(RANGE_END);
+		return end == null ? -1 : end;
+	}
+
+	public void execute(FtpIoSession session, FtpServerContext context, FtpRequest request)
+			throws IOException, FtpException {
+		session.resetState();
+		session.removeAttribute(RANGE_END);
+
+		String argument = request.getArgument();
+		long start;
+		long end;
+		try {
+			String[] parts = argument == null ? new String[0] : argument.trim().split(" +");
+			if (parts.length != 2) {
+				throw new NumberFormatException();
+			}
+			start = Long.parseLong(parts[0]);
+			end = Long.parseLong(parts[1]);
+		} catch (NumberFormatException e) {
+			reply(session, FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+					"Syntax error, use RANG start end.");
+			return;
+		}
+
+		if (start == 1 && end == 0) {
+			reply(session, FtpReply.REPLY_350_REQUESTED_FILE_ACTION_PENDING_FURTHER_INFORMATION,
+					"Byte range cleared.");
+			return;
+		}
+		if (start < 0 || end < start) {
+			reply(session, FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+					"Invalid byte range.");
+			return;
+		}
+
+		session.setFileOffset(start);
+		session.setAttribute(RANGE_END, end);
+		reply(session, FtpReply.REPLY_350_REQUESTED_FILE_ACTION_PENDING_FURTHER_INFORMATION,
+				"Restarting at " + start + ". End byte range at " + end + ".");
+	}
+}
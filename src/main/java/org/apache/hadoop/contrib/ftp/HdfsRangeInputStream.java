@@ -0,0 +1,60 @@
+package org.apache.hadoop.contrib.ftp;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream which ends after a given number of bytes of the underlying stream
+ */
+public class HdfsRangeInputStream extends FilterInputStream {
+
+	private long remaining;
+
+	/**
+	 * Constructs the stream
+	 *
+	 * @param in     stream positioned at the start of the range
+	 * @param length length of the range
+	 */
+	public HdfsRangeInputStream(InputStream in, long length) {
+		super(in);
+		this.remaining = length;
+	}
+
+	public int read() throws IOException {
+		if (remaining <= 0) {
+			return -1;
+		}
+		int b = in.read();
+		if (b >= 0) {
+			remaining--;
+		}
+		return b;
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (remaining <= 0) {
+			return -1;
+		}
+		int n = in.read(b, off, (int) Math.min(len, remaining));
+		if (n > 0) {
+			remaining -= n;
+		}
+		return n;
+	}
+
+	public long skip(long n) throws IOException {
+		long skipped = in.skip(Math.min(n, remaining));
+		remaining -= skipped;
+		return skipped;
+	}
+
+	public int available() throws IOException {
+		return (int) Math.min(in.available(), remaining);
+	}
+
+	public boolean markSupported() {
+		return false;
+	}
+}
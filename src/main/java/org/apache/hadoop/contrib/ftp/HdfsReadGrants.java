@@ -0,0 +1,74 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.apache.ftpserver.interfaces.FtpIoSession;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Read permissions granted in a session. Segmented clients retrieve the same file
+ * many times, a grant is reused while the file is not modified and the grant is not
+ * older than the metadata cache time to live
+ */
+public class HdfsReadGrants {
+
+	private static final String ATTRIBUTE = "org.apache.hadoop.contrib.ftp.read-grants";
+
+	private static final int MAX_ENTRIES = 64;
+
+	private static class Grant {
+		private final long modificationTime;
+		private final long expires;
+
+		private Grant(long modificationTime, long expires) {
+			this.modificationTime = modificationTime;
+			this.expires = expires;
+		}
+	}
+
+	private final Map<String, Grant> grants = new LinkedHashMap<String, Grant>(16, 0.75f, true) {
+		protected boolean removeEldestEntry(Map.Entry<String, Grant> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+
+	/**
+	 * Get grants of the session
+	 *
+	 * @param session ftp session
+	 * @return read grants
+	 */
+	public static synchronized HdfsReadGrants get(FtpIoSession session) {
+		HdfsReadGrants grants = (HdfsReadGrants) session.getAttribute(ATTRIBUTE);
+		if (grants == null) {
+			grants = new HdfsReadGrants();
+			session.setAttribute(ATTRIBUTE, grants);
+		}
+		return grants;
+	}
+
+	/**
+	 * Checks the read permission of the file, reusing a previous grant
+	 *
+	 * @param file file to check
+	 * @return true if the user can read the file
+	 */
+	public synchronized boolean hasReadPermission(HdfsFileObject file) {
+		long now = System.currentTimeMillis();
+		long modificationTime = file.getLastModified();
+		Grant grant = grants.get(file.getFullName());
+		if (grant != null && grant.modificationTime == modificationTime && grant.expires > now) {
+			file.grantRead();
+			return true;
+		}
+		if (!file.hasReadPermission()) {
+			grants.remove(file.getFullName());
+			return false;
+		}
+		long ttl = HdfsOverFtpSystem.getMetadataCache().getTtl();
+		if (ttl > 0) {
+			grants.put(file.getFullName(), new Grant(modificationTime, now + ttl));
+		}
+		return true;
+	}
+}
@@ -0,0 +1,292 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of open HDFS read handles. A handle is keyed by path, modification time
+ * and the client which opened it, so a modified file gets a new handle and a
+ * handle is only shared by sessions using the same client; in proxy users mode
+ * these are sessions of one user. Readers use
+ * positional reads, which don't move the handle position, so concurrent and
+ * segmented downloads of one file share the block locations fetched by one open.
+ * Handles which are not used for some time are closed. A handle whose read fails
+ * is dropped, so the next reader opens the file again instead of reusing a handle
+ * of a closed or failed client; all handles are dropped on NameNode failover
+ */
+public class HdfsReadHandleCache {
+
+	private final static Logger log = LoggerFactory.getLogger(HdfsReadHandleCache.class);
+
+	private final int maxEntries;
+
+	private final long idleTimeout;
+
+	// access ordered, the eldest entries are evicted first
+	private final LinkedHashMap<String, Handle> handles = new LinkedHashMap<String, Handle>(16, 0.75f, true);
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Shared read handle
+	 */
+	public class Handle {
+		private final String key;
+		private final DistributedFileSystem dfs;
+		private final FSDataInputStream in;
+		private int refs = 0;
+		private long lastUsed = System.currentTimeMillis();
+		private boolean cached = true;
+
+		private Handle(String key, DistributedFileSystem dfs, FSDataInputStream in) {
+			this.key = key;
+			this.dfs = dfs;
+			this.in = in;
+		}
+
+		/**
+		 * Read from the file without moving the handle position
+		 *
+		 * @param position position in the file
+		 * @param b        buffer to read to
+		 * @param off      offset in the buffer
+		 * @param len      maximum number of bytes to read
+		 * @return number of bytes read or -1 at the end of the file
+		 * @throws IOException if HDFS fails
+		 */
+		public int read(long position, byte[] b, int off, int len) throws IOException {
+			try {
+				return in.read(position, b, off, len);
+			} catch (IOException e) {
+				drop(this);
+				throw e;
+			}
+		}
+
+		/**
+		 * Give the handle back to the cache
+		 */
+		public void release() {
+			HdfsReadHandleCache.this.release(this);
+		}
+	}
+
+	/**
+	 * Constructs the cache
+	 *
+	 * @param maxEntries  maximum number of open handles, 0 disables the cache
+	 * @param idleTimeout time in milliseconds after which an unused handle is closed
+	 */
+	public HdfsReadHandleCache(int maxEntries, long idleTimeout) {
+		this.maxEntries = maxEntries;
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * Checks if handles are cached
+	 *
+	 * @return true if the cache is enabled
+	 */
+	public boolean isEnabled() {
+		return maxEntries > 0;
+	}
+
+	/**
+	 * Get a handle of the file, opening it if there is no cached one
+	 *
+	 * @param dfs              client of the session, the file is opened with it
+	 * @param path             path of the file
+	 * @param modificationTime modification time of the file
+	 * @return handle which has to be released after use
+	 * @throws IOException if the file can't be opened
+	 */
+	public Handle acquire(DistributedFileSystem dfs, Path path, long modificationTime) throws IOException {
+		String key = path.toUri().getPath() + "@" + modificationTime + "#" + System.identityHashCode(dfs);
+		synchronized (this) {
+			Handle handle = handles.get(key);
+			if (handle != null && handle.dfs == dfs) {
+				hits.incrementAndGet();
+				handle.refs++;
+				return handle;
+			}
+		}
+
+		misses.incrementAndGet();
+		FSDataInputStream in = dfs.open(path);
+		List<Handle> evicted;
+		Handle handle;
+		synchronized (this) {
+			handle = handles.get(key);
+			if (handle != null && handle.dfs == dfs) {
+				// opened by another reader meanwhile
+				handle.refs++;
+				evicted = null;
+			} else {
+				handle = new Handle(key, dfs, in);
+				handle.refs++;
+				evicted = evict(System.currentTimeMillis(), 1);
+				if (handles.size() < maxEntries && !handles.containsKey(key)) {
+					handles.put(key, handle);
+				} else {
+					// all handles are in use or the key is taken by another client,
+					// this one is closed on release
+					handle.cached = false;
+				}
+				in = null;
+			}
+		}
+		if (in != null) {
+			in.close();
+		}
+		close(evicted);
+		return handle;
+	}
+
+	private void release(Handle handle) {
+		List<Handle> evicted;
+		boolean closeHandle;
+		synchronized (this) {
+			handle.refs--;
+			handle.lastUsed = System.currentTimeMillis();
+			closeHandle = !handle.cached && handle.refs == 0;
+			evicted = evict(handle.lastUsed, 0);
+		}
+		if (closeHandle) {
+			evicted.add(handle);
+		}
+		close(evicted);
+	}
+
+	/**
+	 * Remove idle handles and unused handles over the limit. Called under the lock
+	 *
+	 * @param now   current time
+	 * @param extra number of entries to free in addition to the limit
+	 * @return removed handles to close outside of the lock
+	 */
+	private List<Handle> evict(long now, int extra) {
+		List<Handle> evicted = new ArrayList<Handle>();
+		Iterator<Handle> it = handles.values().iterator();
+		while (it.hasNext()) {
+			Handle handle = it.next();
+			if (handle.refs > 0) {
+				continue;
+			}
+			if (now - handle.lastUsed > idleTimeout || handles.size() + extra > maxEntries) {
+				it.remove();
+				handle.cached = false;
+				evicted.add(handle);
+			}
+		}
+		return evicted;
+	}
+
+	/**
+	 * Remove a failed handle from the cache, it is closed on release
+	 */
+	private synchronized void drop(Handle handle) {
+		if (handle.cached && handles.get(handle.key) == handle) {
+			handles.remove(handle.key);
+			log.debug("Read handle " + handle.key + " failed, dropped from the cache");
+		}
+		handle.cached = false;
+	}
+
+	/**
+	 * Drop all handles, e.g. after failover when their clients are closed.
+	 * Handles in use are closed on release
+	 */
+	public void invalidateAll() {
+		List<Handle> evicted = new ArrayList<Handle>();
+		synchronized (this) {
+			for (Handle handle : handles.values()) {
+				handle.cached = false;
+				if (handle.refs == 0) {
+					evicted.add(handle);
+				}
+			}
+			handles.clear();
+		}
+		close(evicted);
+	}
+
+	/**
+	 * Drop handles of a deleted or moved file. Handles in use are closed on release
+	 *
+	 * @param path path of the file
+	 */
+	public void invalidate(Path path) {
+		String prefix = path.toUri().getPath() + "@";
+		List<Handle> evicted = new ArrayList<Handle>();
+		synchronized (this) {
+			Iterator<Handle> it = handles.values().iterator();
+			while (it.hasNext()) {
+				Handle handle = it.next();
+				if (handle.key.startsWith(prefix)) {
+					it.remove();
+					handle.cached = false;
+					if (handle.refs == 0) {
+						evicted.add(handle);
+					}
+				}
+			}
+		}
+		close(evicted);
+	}
+
+	private void close(List<Handle> handles) {
+		if (handles == null) {
+			return;
+		}
+		for (Handle handle : handles) {
+			try {
+				handle.in.close();
+			} catch (IOException e) {
+				log.debug("Can't close read handle " + handle.key, e);
+			}
+		}
+	}
+
+	/**
+	 * Get number of opens served by a cached handle
+	 *
+	 * @return number of hits
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Get number of opens which went to HDFS
+	 *
+	 * @return number of misses
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Get number of open handles
+	 *
+	 * @return number of cached handles
+	 */
+	public synchronized int size() {
+		return handles.size();
+	}
+
+	public String toString() {
+		return "read handle cache: size=" + size() + " hits=" + getHits() + " misses=" + getMisses();
+	}
+}
@@ -0,0 +1,92 @@
+package org.apache.hadoop.contrib.ftp;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Joins concurrent identical NameNode calls. The first caller of a key runs the
+ * call, callers which come while it is in flight wait for its result instead of
+ * making their own call. Nothing is kept after the call completes, so results
+ * are never older than the call itself. Callers are admitted by HdfsAdmission
+ * before they come here, a joining caller waits in the queue of its own user first
+ */
+public class HdfsRequestCoalescer {
+
+	private final ConcurrentMap<String, FutureTask<Object>> inFlight = new ConcurrentHashMap<String, FutureTask<Object>>();
+
+	private final AtomicLong calls = new AtomicLong();
+
+	private final AtomicLong coalesced = new AtomicLong();
+
+	/**
+	 * Run the call or join the identical call in flight
+	 *
+	 * @param key  operation and arguments of the call
+	 * @param call call to run
+	 * @return result of the call
+	 * @throws IOException if the call failed
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T call(String key, final Callable<T> call) throws IOException {
+		FutureTask<Object> task = new FutureTask<Object>(new Callable<Object>() {
+			public Object call() throws Exception {
+				return call.call();
+			}
+		});
+		FutureTask<Object> running = inFlight.putIfAbsent(key, task);
+		if (running == null) {
+			calls.incrementAndGet();
+			try {
+				task.run();
+			} finally {
+				inFlight.remove(key, task);
+			}
+			running = task;
+		} else {
+			coalesced.incrementAndGet();
+		}
+
+		try {
+			return (T) running.get();
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("Interrupted while waiting for " + key);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(key + " failed: " + cause);
+		}
+	}
+
+	/**
+	 * Get number of calls made to the NameNode
+	 *
+	 * @return number of calls
+	 */
+	public long getCalls() {
+		return calls.get();
+	}
+
+	/**
+	 * Get number of calls answered by a call of another caller
+	 *
+	 * @return number of coalesced calls
+	 */
+	public long getCoalesced() {
+		return coalesced.get();
+	}
+
+	public String toString() {
+		return "request coalescer: calls=" + getCalls() + " coalesced=" + getCoalesced();
+	}
+}
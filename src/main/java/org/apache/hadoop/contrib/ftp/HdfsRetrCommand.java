@@ -0,0 +1,145 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.apache.ftpserver.ftplet.DataConnection;
+import org.apache.ftpserver.ftplet.DataType;
+import org.apache.ftpserver.ftplet.FileObject;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.interfaces.FtpIoSession;
+import org.apache.ftpserver.interfaces.FtpServerContext;
+import org.apache.ftpserver.interfaces.ServerFtpStatistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketException;
+
+/**
+ * RETR command. The file is read through the read-ahead stream.
+ * In MODE Z the file is compressed on the way. A directory can be retrieved
+ * as a tar or zip archive by adding the extension to its name.
+ * A byte range set by RANG limits the transfer to the range
+ */
+public class HdfsRetrCommand extends HdfsCommand {
+
+	private final Logger log = LoggerFactory.getLogger(HdfsRetrCommand.class);
+
+	public void execute(FtpIoSession session, FtpServerContext context, FtpRequest request)
+			throws IOException, FtpException {
+		try {
+			long skipLen = session.getFileOffset();
+			long rangeEnd = HdfsRangCommand.takeRangeEnd(session);
+			session.resetState();
+
+			String fileName = request.getArgument();
+			if (fileName == null) {
+				reply(session, FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+						"Syntax error in parameters or arguments.");
+				return;
+			}
+			if (rangeEnd >= 0 && rangeEnd < skipLen) {
+				reply(session, FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+						"Restart offset " + skipLen + " is after the end of the byte range " + rangeEnd + ".");
+				return;
+			}
+
+			FileObject file = getFileObject(session, fileName);
+
+			// a missing "dir.tar" or "dir.zip" is the virtual archive of the directory
+			HdfsArchive.Format archiveFormat = null;
+			HdfsFileObject archiveDir = null;
+			if (file != null && !file.doesExist()) {
+				archiveFormat = HdfsArchive.getFormat(fileName);
+				if (archiveFormat != null) {
+					archiveDir = getHdfsFileObject(session, HdfsArchive.getDirectoryName(fileName, archiveFormat));
+					if (archiveDir != null && !archiveDir.isDirectory()) {
+						archiveDir = null;
+					}
+				}
+			}
+
+			if (archiveDir != null) {
+				if (skipLen > 0 || rangeEnd >= 0) {
+					reply(session, FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN, "Archive can't be restarted.");
+					return;
+				}
+				file = archiveDir;
+			} else if (file == null || !file.doesExist()) {
+				reply(session, FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN, "No such file.");
+				return;
+			} else if (!file.isFile()) {
+				reply(session, FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN, "Not a plain file.");
+				return;
+			}
+			boolean readable = file instanceof HdfsFileObject
+					? HdfsReadGrants.get(session).hasReadPermission((HdfsFileObject) file) : file.hasReadPermission();
+			if (!readable) {
+				reply(session, FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN, "Permission denied.");
+				return;
+			}
+
+			reply(session, FtpReply.REPLY_150_FILE_STATUS_OKAY,
+					"File status okay; about to open data connection.");
+
+			DataConnection dataConnection;
+			try {
+				dataConnection = session.getDataConnection().openConnection();
+			} catch (Exception e) {
+				log.debug("Exception getting the output data stream", e);
+				reply(session, FtpReply.REPLY_425_CANT_OPEN_DATA_CONNECTION, "Can't open data connection.");
+				return;
+			}
+
+			InputStream in;
+			try {
+				if (archiveDir != null) {
+					in = HdfsArchive.open(archiveDir, (HdfsUser) session.getUser(), archiveFormat,
+							HdfsOverFtpSystem.getTransferExecutor());
+				} else if (rangeEnd >= 0 && file instanceof HdfsFileObject) {
+					in = ((HdfsFileObject) file).createInputStream(skipLen, rangeEnd - skipLen + 1);
+				} else {
+					in = file.createInputStream(skipLen);
+				}
+			} catch (IOException e) {
+				log.debug("Can't open " + file.getFullName(), e);
+				reply(session, FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN, "Can't open " + fileName + ".");
+				return;
+			}
+			if (in == null) {
+				reply(session, FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN, "Can't open " + fileName + ".");
+				return;
+			}
+
+			if (HdfsDeflate.isZipMode(session)) {
+				if (session.getDataType() == DataType.ASCII) {
+					in = HdfsAsciiStreams.toNetwork(in);
+				}
+				in = HdfsDeflate.deflate(in, fileName);
+			}
+
+			try {
+				long transSz = dataConnection.transferToClient(in);
+				((ServerFtpStatistics) context.getFtpStatistics()).setDownload(session, file, transSz);
+				log.info("File downloaded " + file.getFullName() + " (" + transSz + " bytes)");
+			} catch (SocketException e) {
+				log.debug("Socket exception during data transfer", e);
+				reply(session, FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
+						"Data connection closed; transfer aborted.");
+				return;
+			} catch (IOException e) {
+				log.debug("IOException during data transfer", e);
+				reply(session, FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
+						"Requested action aborted: " + e.getMessage());
+				return;
+			} finally {
+				closeQuietly(in);
+			}
+
+			reply(session, FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "Closing data connection.");
+		} finally {
+			session.getDataConnection().closeDataConnection();
+		}
+	}
+}
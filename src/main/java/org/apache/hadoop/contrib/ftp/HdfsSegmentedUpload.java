@@ -0,0 +1,183 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.apache.ftpserver.interfaces.FtpIoSession;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Segmented upload. Ranges of one file are uploaded in parallel sessions to hidden
+ * part files next to the target and then joined with HDFS concat, so the data is not
+ * copied. The joined file replaces the target only when it is complete, a failed
+ * commit leaves the target as it was. A failed segment is simply uploaded again.
+ * <p/>
+ * SITE SEGMENT n name - the next STOR of the name writes segment n<br/>
+ * SITE COMMIT count name - join segments 0 to count-1 into the name
+ * <p/>
+ * HDFS concat requires all segments but the last to be whole blocks. When concat
+ * is not available or is rejected, segments are joined by a sequential copy inside the gateway
+ */
+public class HdfsSegmentedUpload {
+
+	private final static Logger log = LoggerFactory.getLogger(HdfsSegmentedUpload.class);
+
+	private static final String NEXT_SEGMENT = "org.apache.hadoop.contrib.ftp.next-segment";
+
+	private static final int BUFFER_SIZE = 256 * 1024;
+
+	private HdfsSegmentedUpload() {
+	}
+
+	/**
+	 * Get name of the hidden part file of a segment
+	 *
+	 * @param fileName name of the target file
+	 * @param segment  segment number
+	 * @return name of the part file in the same directory
+	 */
+	public static String getSegmentName(String fileName, int segment) {
+		return sibling(fileName, ".seg." + segment);
+	}
+
+	private static String sibling(String fileName, String suffix) {
+		int pos = fileName.lastIndexOf('/');
+		return fileName.substring(0, pos + 1) + "." + fileName.substring(pos + 1) + suffix;
+	}
+
+	/**
+	 * Make the next STOR of the file write a segment
+	 *
+	 * @param session  ftp session
+	 * @param fileName name of the target file
+	 * @param segment  segment number
+	 */
+	public static void setNextSegment(FtpIoSession session, String fileName, int segment) {
+		session.setAttribute(NEXT_SEGMENT, getSegmentName(fileName, segment));
+		session.setAttribute(NEXT_SEGMENT + ".target", fileName);
+	}
+
+	/**
+	 * Get name STOR has to write to. The segment mark is used once
+	 *
+	 * @param session  ftp session
+	 * @param fileName file name from STOR
+	 * @return part file name if a segment of the file is expected, otherwise the file name
+	 */
+	public static String takeStoreName(FtpIoSession session, String fileName) {
+		String segment = (String) session.removeAttribute(NEXT_SEGMENT);
+		String target = (String) session.removeAttribute(NEXT_SEGMENT + ".target");
+		return segment != null && fileName.equals(target) ? segment : fileName;
+	}
+
+	/**
+	 * Join the segments into the target. The segments are joined in the temporary
+	 * file first, the target is replaced only when the joined file is complete
+	 *
+	 * @param target   target file, replaced if it exists
+	 * @param segments uploaded segments in order
+	 * @param temp     file to join the segments in
+	 * @return length of the target
+	 * @throws IOException if a segment is missing or the segments can't be joined
+	 */
+	public static long commit(HdfsFileObject target, HdfsFileObject[] segments, HdfsFileObject temp)
+			throws IOException {
+		long len = 0;
+		for (int i = 0; i < segments.length; i++) {
+			if (!segments[i].isFile()) {
+				throw new IOException("Segment " + i + " is missing");
+			}
+			len += segments[i].getSize();
+		}
+		if (temp.doesExist() && !temp.delete()) {
+			throw new IOException("Can't delete " + temp.getFullName());
+		}
+
+		HdfsFileObject[] rest = new HdfsFileObject[segments.length - 1];
+		System.arraycopy(segments, 1, rest, 0, rest.length);
+		boolean joined = false;
+		if (rest.length == 0 || HdfsFileObject.isConcatSupported()) {
+			if (!segments[0].move(temp)) {
+				throw new IOException("Can't move segment 0 to " + temp.getFullName());
+			}
+			joined = rest.length == 0;
+			if (!joined) {
+				try {
+					temp.concat(rest);
+					joined = true;
+				} catch (IOException e) {
+					log.info("Concat of " + target.getFullName() + " rejected, copying segments: " + e.getMessage());
+					if (!temp.move(segments[0])) {
+						throw new IOException("Can't move " + temp.getFullName() + " back to segment 0");
+					}
+				}
+			}
+		}
+		if (!joined) {
+			join(segments, temp);
+		}
+
+		// HDFS rename does not replace an existing file, the old target is deleted
+		// right before the rename so the window without a target is as short as possible
+		if (target.doesExist() && !target.delete()) {
+			throw new IOException("Can't replace " + target.getFullName());
+		}
+		if (!temp.move(target)) {
+			throw new IOException("Can't move " + temp.getFullName() + " to " + target.getFullName());
+		}
+		for (HdfsFileObject segment : segments) {
+			if (segment.doesExist()) {
+				segment.delete();
+			}
+		}
+		return len;
+	}
+
+	/**
+	 * Copy the files one after another into the output file
+	 */
+	private static void join(HdfsFileObject[] files, HdfsFileObject output) throws IOException {
+		OutputStream out = output.createOutputStream(0);
+		if (out == null) {
+			throw new IOException("Can't create " + output.getFullName());
+		}
+		boolean done = false;
+		try {
+			byte[] buf = new byte[BUFFER_SIZE];
+			for (HdfsFileObject file : files) {
+				FSDataInputStream in = file.open(0);
+				try {
+					int n;
+					while ((n = in.read(buf)) >= 0) {
+						out.write(buf, 0, n);
+					}
+				} finally {
+					in.close();
+				}
+			}
+			out.close();
+			done = true;
+		} finally {
+			if (!done) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					// ignore
+				}
+				output.delete();
+			}
+		}
+	}
+
+	/**
+	 * Get name of the temporary file used to join segments by copying
+	 *
+	 * @param fileName name of the target file
+	 * @return temporary file name
+	 */
+	public static String getTempName(String fileName) {
+		return sibling(fileName, ".seg.tmp");
+	}
+}
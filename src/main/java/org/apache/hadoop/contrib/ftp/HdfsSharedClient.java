@@ -0,0 +1,264 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * HDFS client of the superuser shared by all sessions. Hadoop clients of one
+ * user share a single IPC connection to the NameNode, so more clients of the
+ * superuser would not add connections. The client is created on first use
+ * for the active NameNode, callers wait only for the client being created and
+ * never for each other once it exists. A background probe retires the client
+ * when it fails several probes in a row, it is created again on the next use
+ * and the retired one is closed after a delay, so calls in progress can finish.
+ * The client of a NameNode which is no more active is closed on failover
+ */
+public class HdfsSharedClient {
+
+	private final static Logger log = LoggerFactory.getLogger(HdfsSharedClient.class);
+
+	private static final Path PROBE_PATH = new Path("/");
+
+	// consecutive failed probes after which the client is replaced
+	private static final int PROBE_FAILURES = 3;
+
+	// time in milliseconds a retired client stays open for the calls in progress
+	private static final long RETIRE_DELAY = 60000;
+
+	/**
+	 * Creates the HDFS client
+	 */
+	public interface ClientFactory {
+		/**
+		 * Create and initialize a client
+		 *
+		 * @param uri NameNode URI
+		 * @return new client
+		 * @throws IOException if the client can't be initialized
+		 */
+		DistributedFileSystem create(URI uri) throws IOException;
+	}
+
+	private final ClientFactory factory;
+
+	private final HdfsNameNodes nameNodes;
+
+	private volatile DistributedFileSystem client;
+
+	// NameNode the client is connected to, written before the client
+	private volatile URI endpoint;
+
+	// consecutive failed probes of the client
+	private int failures;
+
+	// held while the client is created, the state lock is not
+	private final Object createLock = new Object();
+
+	// replaced clients waiting to be closed
+	private final List<DistributedFileSystem> retired = new ArrayList<DistributedFileSystem>();
+
+	private final Timer probe;
+
+	private boolean closed = false;
+
+	/**
+	 * Constructs the shared client, nothing is connected until the first get
+	 *
+	 * @param probeInterval time in milliseconds between health probes, 0 disables probes
+	 * @param nameNodes     NameNode endpoints
+	 * @param factory       factory of the client
+	 */
+	public HdfsSharedClient(long probeInterval, HdfsNameNodes nameNodes, ClientFactory factory) {
+		this.factory = factory;
+		this.nameNodes = nameNodes;
+		nameNodes.addListener(new HdfsNameNodes.Listener() {
+			public void failover(URI failed, URI active) {
+				drop(failed);
+			}
+		});
+		if (probeInterval > 0) {
+			probe = new Timer("hdfs-client-probe", true);
+			probe.schedule(new TimerTask() {
+				public void run() {
+					probe();
+				}
+			}, probeInterval, probeInterval);
+		} else {
+			probe = null;
+		}
+	}
+
+	/**
+	 * Get the client, create it if there is none for the active NameNode
+	 *
+	 * @return initialized client
+	 * @throws IOException if the client can't be initialized
+	 */
+	public DistributedFileSystem get() throws IOException {
+		URI active = nameNodes.getActive();
+		DistributedFileSystem current = getClient(active);
+		if (current != null) {
+			return current;
+		}
+		synchronized (createLock) {
+			current = getClient(active);
+			if (current != null) {
+				return current;
+			}
+			current = factory.create(active);
+			boolean stored;
+			synchronized (this) {
+				stored = !closed;
+				if (stored) {
+					endpoint = active;
+					failures = 0;
+					client = current;
+				}
+			}
+			if (!stored) {
+				closeQuietly(current);
+				throw new IOException("HDFS client is closed");
+			}
+			log.info("HDFS client initialized for " + active);
+			return current;
+		}
+	}
+
+	/**
+	 * Get the client if it is connected to the active NameNode
+	 *
+	 * @return client or null if it has to be created
+	 */
+	private DistributedFileSystem getClient(URI active) throws IOException {
+		DistributedFileSystem current = client;
+		if (current != null && active.equals(endpoint)) {
+			return current;
+		}
+		DistributedFileSystem stale = null;
+		synchronized (this) {
+			if (closed) {
+				throw new IOException("HDFS client is closed");
+			}
+			if (client != null && !active.equals(endpoint)) {
+				// left from a NameNode which failed, blocked calls get an error when it's closed
+				stale = client;
+				client = null;
+			}
+			current = client;
+		}
+		if (stale != null) {
+			closeQuietly(stale);
+		}
+		return current;
+	}
+
+	/**
+	 * Close the client of a NameNode, calls blocked on it fail and sessions
+	 * get a new client on their next call
+	 *
+	 * @param uri NameNode URI
+	 */
+	private void drop(URI uri) {
+		DistributedFileSystem toClose = null;
+		synchronized (this) {
+			if (client != null && uri.equals(endpoint)) {
+				toClose = client;
+				client = null;
+			}
+		}
+		if (toClose != null) {
+			closeQuietly(toClose);
+		}
+	}
+
+	/**
+	 * Check the client with a cheap call, retire it if it failed several probes
+	 * in a row. Runs on the probe timer, tests call it directly
+	 */
+	void probe() {
+		DistributedFileSystem current = client;
+		if (current == null) {
+			return;
+		}
+		boolean ok;
+		try {
+			current.getFileStatus(PROBE_PATH);
+			ok = true;
+		} catch (IOException e) {
+			log.warn("HDFS client failed health probe: " + e.getMessage());
+			ok = false;
+		}
+		synchronized (this) {
+			if (client != current) {
+				return;
+			}
+			if (ok) {
+				failures = 0;
+			} else if (++failures >= PROBE_FAILURES) {
+				log.warn("HDFS client failed " + failures + " probes, replacing it");
+				client = null;
+				failures = 0;
+				retire(current);
+			}
+		}
+	}
+
+	/**
+	 * Close the client after a delay, sessions already get a new one. Called under the lock
+	 */
+	private void retire(final DistributedFileSystem old) {
+		retired.add(old);
+		probe.schedule(new TimerTask() {
+			public void run() {
+				boolean close;
+				synchronized (HdfsSharedClient.this) {
+					close = retired.remove(old);
+				}
+				if (close) {
+					closeQuietly(old);
+				}
+			}
+		}, RETIRE_DELAY);
+	}
+
+	/**
+	 * Stop the probes and close the client
+	 */
+	public void close() {
+		if (probe != null) {
+			probe.cancel();
+		}
+		DistributedFileSystem toClose;
+		DistributedFileSystem[] retiredClients;
+		synchronized (this) {
+			closed = true;
+			toClose = client;
+			client = null;
+			retiredClients = retired.toArray(new DistributedFileSystem[retired.size()]);
+			retired.clear();
+		}
+		for (DistributedFileSystem old : retiredClients) {
+			closeQuietly(old);
+		}
+		if (toClose != null) {
+			closeQuietly(toClose);
+		}
+	}
+
+	private static void closeQuietly(DistributedFileSystem client) {
+		try {
+			client.close();
+		} catch (IOException e) {
+			log.debug("Can't close HDFS client", e);
+		}
+	}
+}
@@ -0,0 +1,314 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.interfaces.Command;
+import org.apache.ftpserver.interfaces.FtpIoSession;
+import org.apache.ftpserver.interfaces.FtpServerContext;
+import org.apache.hadoop.fs.FileChecksum;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * SITE command with HDFS specific subcommands. Subcommands which are not known
+ * here are passed to the standard SITE command.
+ * <p/>
+ * SITE CPFR name - remember the source of a server side copy<br/>
+ * SITE CPTO name - copy the remembered source to the name inside HDFS, "250-" lines report progress<br/>
+ * SITE SEGMENT n name - the next STOR of the name uploads segment n<br/>
+ * SITE COMMIT count name - join uploaded segments into the name, see HdfsSegmentedUpload<br/>
+ * SITE CHECKSUM name - checksum HDFS computes from the block checksums without reading the file<br/>
+ * SITE HDFSSTAT - statistics of the gateway, administrators only
+ */
+public class HdfsSiteCommand extends HdfsCommand {
+
+	private final Logger log = LoggerFactory.getLogger(HdfsSiteCommand.class);
+
+	private static final String COPY_FROM = "org.apache.hadoop.contrib.ftp.copy-from";
+
+	private final Command defaultSite;
+
+	/**
+	 * Constructs the command
+	 *
+	 * @param defaultSite standard SITE command to handle the rest of subcommands
+	 */
+	public HdfsSiteCommand(Command defaultSite) {
+		this.defaultSite = defaultSite;
+	}
+
+	public void execute(FtpIoSession session, FtpServerContext context, FtpRequest request)
+			throws IOException, FtpException {
+		String argument = request.getArgument();
+		String subCommand = argument == null ? "" : argument.trim();
+		String subArgument = null;
+		int pos = subCommand.indexOf(' ');
+		if (pos > 0) {
+			subArgument = subCommand.substring(pos + 1).trim();
+			subCommand = subCommand.substring(0, pos);
+		}
+		subCommand = subCommand.toUpperCase();
+
+		if ("CPFR".equals(subCommand)) {
+			session.resetState();
+			copyFrom(session, subArgument);
+		} else if ("CPTO".equals(subCommand)) {
+			session.resetState();
+			copyTo(session, subArgument);
+		} else if ("SEGMENT".equals(subCommand)) {
+			session.resetState();
+			segment(session, subArgument);
+		} else if ("COMMIT".equals(subCommand)) {
+			session.resetState();
+			commit(session, subArgument);
+		} else if ("CHECKSUM".equals(subCommand)) {
+			session.resetState();
+			checksum(session, subArgument);
+		} else if ("HDFSSTAT".equals(subCommand)) {
+			session.resetState();
+			statistics(session, context);
+		} else if (defaultSite != null) {
+			defaultSite.execute(session, context, request);
+		} else {
+			session.resetState();
+			reply(session, FtpReply.REPLY_502_COMMAND_NOT_IMPLEMENTED, "Command SITE " + subCommand
+					+ " not implemented.");
+		}
+	}
+
+	/**
+	 * Reply "algorithm checksum name", the algorithm names the HDFS checksum and its
+	 * block parameters, checksums are comparable between files with the same parameters
+	 */
+	private void checksum(FtpIoSession session, String fileName) throws FtpException {
+		if (fileName == null || fileName.length() == 0) {
+			reply(session, FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+					"Syntax error in parameters or arguments.");
+			return;
+		}
+		HdfsFileObject file = getHdfsFileObject(session, fileName);
+		if (file == null || !file.isFile()) {
+			reply(session, FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN, "No such file.");
+			return;
+		}
+		if (!file.hasReadPermission()) {
+			reply(session, FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN, "Permission denied.");
+			return;
+		}
+
+		FileChecksum checksum;
+		try {
+			checksum = file.getFileChecksum();
+		} catch (IOException e) {
+			log.debug("Can't get checksum of " + file.getFullName(), e);
+			reply(session, FtpReply.REPLY_451_REQUESTED_ACTION_ABORTED,
+					"Requested action aborted: " + e.getMessage());
+			return;
+		}
+		if (checksum == null) {
+			reply(session, FtpReply.REPLY_504_COMMAND_NOT_IMPLEMENTED_FOR_THAT_PARAMETER,
+					"Checksum is not available for " + fileName + ".");
+			return;
+		}
+		reply(session, FtpReply.REPLY_200_COMMAND_OKAY, checksum.getAlgorithmName() + " "
+				+ HdfsChecksumCommand.toHex(checksum.getBytes()) + " " + file.getFullName());
+	}
+
+	private void statistics(FtpIoSession session, FtpServerContext context) throws FtpException {
+		if (!context.getUserManager().isAdmin(session.getUser().getName())) {
+			reply(session, FtpReply.REPLY_530_NOT_LOGGED_IN, "Access denied.");
+			return;
+		}
+		reply(session, FtpReply.REPLY_200_COMMAND_OKAY, HdfsOverFtpSystem.getStatistics());
+	}
+
+	/**
+	 * Split "number name" argument
+	 *
+	 * @return number and name or null if the argument is invalid
+	 */
+	private Object[] parseNumberAndName(String argument) {
+		if (argument == null) {
+			return null;
+		}
+		int pos = argument.indexOf(' ');
+		if (pos <= 0) {
+			return null;
+		}
+		String name = argument.substring(pos + 1).trim();
+		try {
+			int number = Integer.parseInt(argument.substring(0, pos));
+			return number < 0 || name.length() == 0 ? null : new Object[]{number, name};
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private void segment(FtpIoSession session, String argument) {
+		Object[] parsed = parseNumberAndName(argument);
+		if (parsed == null) {
+			reply(session, FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+					"Syntax error, use SITE SEGMENT number name.");
+			return;
+		}
+		int segment = (Integer) parsed[0];
+		String fileName = (String) parsed[1];
+		HdfsSegmentedUpload.setNextSegment(session, fileName, segment);
+		reply(session, FtpReply.REPLY_200_COMMAND_OKAY, "Next STOR of " + fileName + " is segment " + segment + ".");
+	}
+
+	private void commit(FtpIoSession session, String argument) throws FtpException {
+		Object[] parsed = parseNumberAndName(argument);
+		if (parsed == null || (Integer) parsed[0] == 0) {
+			reply(session, FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+					"Syntax error, use SITE COMMIT count name.");
+			return;
+		}
+		int count = (Integer) parsed[0];
+		String fileName = (String) parsed[1];
+
+		HdfsFileObject target = getHdfsFileObject(session, fileName);
+		HdfsFileObject temp = getHdfsFileObject(session, HdfsSegmentedUpload.getTempName(fileName));
+		HdfsFileObject[] segments = new HdfsFileObject[count];
+		for (int i = 0; i < count; i++) {
+			segments[i] = getHdfsFileObject(session, HdfsSegmentedUpload.getSegmentName(fileName, i));
+		}
+		if (target == null || temp == null || segments[0] == null) {
+			reply(session, FtpReply.REPLY_553_REQUESTED_ACTION_NOT_TAKEN_FILE_NAME_NOT_ALLOWED,
+					"Invalid file name.");
+			return;
+		}
+		if (target.isDirectory()) {
+			reply(session, FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN, "Not a plain file.");
+			return;
+		}
+		if (!target.hasWritePermission()) {
+			reply(session, FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN, "Permission denied.");
+			return;
+		}
+
+		try {
+			long len = HdfsSegmentedUpload.commit(target, segments, temp);
+			log.info("Committed " + count + " segments of " + target.getFullName() + " (" + len + " bytes)");
+			reply(session, FtpReply.REPLY_250_REQUESTED_FILE_ACTION_OKAY,
+					"Committed " + count + " segments, " + len + " bytes.");
+		} catch (IOException e) {
+			log.debug("Commit of " + target.getFullName() + " failed", e);
+			reply(session, FtpReply.REPLY_451_REQUESTED_ACTION_ABORTED,
+					"Requested action aborted: " + e.getMessage());
+		}
+	}
+
+	private void copyFrom(FtpIoSession session, String fileName) throws FtpException {
+		session.removeAttribute(COPY_FROM);
+		if (fileName == null || fileName.length() == 0) {
+			reply(session, FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+					"Syntax error in parameters or arguments.");
+			return;
+		}
+		HdfsFileObject source = getHdfsFileObject(session, fileName);
+		if (source == null || !source.isFile()) {
+			reply(session, FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN, "No such file.");
+			return;
+		}
+		if (!source.hasReadPermission()) {
+			reply(session, FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN, "Permission denied.");
+			return;
+		}
+		session.setAttribute(COPY_FROM, source.getFullName());
+		reply(session, FtpReply.REPLY_350_REQUESTED_FILE_ACTION_PENDING_FURTHER_INFORMATION,
+				"File exists, ready for destination name.");
+	}
+
+	private void copyTo(final FtpIoSession session, String fileName) throws FtpException {
+		String from = (String) session.getAttribute(COPY_FROM);
+		session.removeAttribute(COPY_FROM);
+		if (from == null) {
+			reply(session, FtpReply.REPLY_503_BAD_SEQUENCE_OF_COMMANDS, "Bad sequence of commands, use CPFR first.");
+			return;
+		}
+		if (fileName == null || fileName.length() == 0) {
+			reply(session, FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+					"Syntax error in parameters or arguments.");
+			return;
+		}
+
+		HdfsFileObject source = getHdfsFileObject(session, from);
+		HdfsFileObject target = getHdfsFileObject(session, fileName);
+		if (source == null || !source.isFile()) {
+			reply(session, FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN, "No such file.");
+			return;
+		}
+		if (target == null) {
+			reply(session, FtpReply.REPLY_553_REQUESTED_ACTION_NOT_TAKEN_FILE_NAME_NOT_ALLOWED,
+					"Invalid file name.");
+			return;
+		}
+		if (target.isDirectory()) {
+			target = getHdfsFileObject(session, target.getFullName() + "/" + source.getShortName());
+		}
+		if (target.getFullName().equals(source.getFullName())) {
+			reply(session, FtpReply.REPLY_553_REQUESTED_ACTION_NOT_TAKEN_FILE_NAME_NOT_ALLOWED,
+					"Source and destination are the same file.");
+			return;
+		}
+		if (!source.hasReadPermission() || !target.hasWritePermission()) {
+			reply(session, FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN, "Permission denied.");
+			return;
+		}
+
+		HdfsFileObject temp = getHdfsFileObject(session, HdfsFileCopier.getTempName(target.getFullName()));
+		if (temp == null) {
+			reply(session, FtpReply.REPLY_553_REQUESTED_ACTION_NOT_TAKEN_FILE_NAME_NOT_ALLOWED,
+					"Invalid file name.");
+			return;
+		}
+
+		HdfsFileCopier copier = new HdfsFileCopier(source, target, temp, HdfsOverFtpSystem.getCopyParallelism(),
+				HdfsOverFtpSystem.getTransferExecutor());
+		copier.setProgress(new HdfsFileCopier.Progress() {
+			public void progress(long copied, long total) {
+				session.write(new ContinuationReply(FtpReply.REPLY_250_REQUESTED_FILE_ACTION_OKAY, "Copied " + copied
+						+ " of " + total + " bytes (" + copied * 100 / total + "%)."));
+			}
+		});
+		try {
+			long copied = copier.copy();
+			reply(session, FtpReply.REPLY_250_REQUESTED_FILE_ACTION_OKAY, "Copied " + copied + " bytes.");
+		} catch (IOException e) {
+			log.debug("Copy of " + source.getFullName() + " to " + target.getFullName() + " failed", e);
+			reply(session, FtpReply.REPLY_451_REQUESTED_ACTION_ABORTED,
+					"Requested action aborted: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Intermediate line of a multi-line reply, "code-text". Long copies send one
+	 * every few seconds so the client sees progress and the control connection
+	 * does not look idle; the final reply ends the multi-line reply
+	 */
+	private static class ContinuationReply implements FtpReply {
+		private final int code;
+		private final String message;
+
+		private ContinuationReply(int code, String message) {
+			this.code = code;
+			this.message = message;
+		}
+
+		public int getCode() {
+			return code;
+		}
+
+		public String getMessage() {
+			return message;
+		}
+
+		public String toString() {
+			return code + "-" + message + "\r\n";
+		}
+	}
+}
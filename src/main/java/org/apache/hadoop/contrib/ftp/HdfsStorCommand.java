@@ -0,0 +1,179 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.apache.ftpserver.ftplet.DataConnection;
+import org.apache.ftpserver.ftplet.DataType;
+import org.apache.ftpserver.ftplet.FileObject;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.interfaces.FtpIoSession;
+import org.apache.ftpserver.interfaces.FtpServerContext;
+import org.apache.ftpserver.interfaces.ServerFtpStatistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.SocketException;
+import java.util.zip.ZipException;
+
+/**
+ * STOR, APPE and STOU commands. The data is written to HDFS through the
+ * write-behind stream. The HDFS stream is closed before
+ * the final reply, so a failed write is reported to the client.
+ * In MODE Z the data is decompressed before it is written to HDFS
+ */
+public class HdfsStorCommand extends HdfsCommand {
+
+	private final Logger log = LoggerFactory.getLogger(HdfsStorCommand.class);
+
+	// name of the STOU file when no name is given
+	private static final String UNIQUE_PREFIX = "ftp.dat";
+
+	/**
+	 * Upload command
+	 */
+	public enum Type {
+		STOR, APPE, STOU
+	}
+
+	private final Type type;
+
+	/**
+	 * Constructs the command
+	 *
+	 * @param type command to implement
+	 */
+	public HdfsStorCommand(Type type) {
+		this.type = type;
+	}
+
+	public void execute(FtpIoSession session, FtpServerContext context, FtpRequest request)
+			throws IOException, FtpException {
+		try {
+			long skipLen = session.getFileOffset();
+			session.resetState();
+
+			String fileName = request.getArgument();
+			if (fileName == null && type != Type.STOU) {
+				reply(session, FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+						"Syntax error in parameters or arguments.");
+				return;
+			}
+
+			if (type == Type.STOR) {
+				fileName = HdfsSegmentedUpload.takeStoreName(session, fileName);
+			}
+
+			FileObject file = type == Type.STOU ? getUniqueFile(session, fileName) : getFileObject(session, fileName);
+			if (file == null) {
+				reply(session, FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN, "Invalid file name.");
+				return;
+			}
+			if (file.isDirectory()) {
+				reply(session, FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN, "Not a plain file.");
+				return;
+			}
+			if (!file.hasWritePermission()) {
+				reply(session, FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN, "Permission denied.");
+				return;
+			}
+			if (type == Type.APPE) {
+				skipLen = file.doesExist() ? file.getSize() : 0;
+			} else if (type == Type.STOU) {
+				skipLen = 0;
+				fileName = file.getFullName();
+			}
+
+			if (type == Type.STOU) {
+				reply(session, FtpReply.REPLY_150_FILE_STATUS_OKAY, "FILE: " + fileName);
+			} else {
+				reply(session, FtpReply.REPLY_150_FILE_STATUS_OKAY,
+						"File status okay; about to open data connection.");
+			}
+
+			DataConnection dataConnection;
+			try {
+				dataConnection = session.getDataConnection().openConnection();
+			} catch (Exception e) {
+				log.debug("Exception getting the input data stream", e);
+				reply(session, FtpReply.REPLY_425_CANT_OPEN_DATA_CONNECTION, "Can't open data connection.");
+				return;
+			}
+
+			OutputStream out;
+			try {
+				out = file.createOutputStream(skipLen);
+			} catch (IOException e) {
+				log.debug("Can't create " + file.getFullName(), e);
+				reply(session, FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN, "Can't create " + fileName + ".");
+				return;
+			}
+			if (out == null) {
+				reply(session, FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN, "Can't create " + fileName + ".");
+				return;
+			}
+
+			if (HdfsDeflate.isZipMode(session)) {
+				if (session.getDataType() == DataType.ASCII) {
+					out = HdfsAsciiStreams.fromNetwork(out);
+				}
+				out = HdfsDeflate.inflate(out);
+			}
+
+			try {
+				long transSz = dataConnection.transferFromClient(out);
+				OutputStream closing = out;
+				out = null;
+				closing.close();
+				((ServerFtpStatistics) context.getFtpStatistics()).setUpload(session, file, transSz);
+				log.info("File uploaded " + file.getFullName() + " (" + transSz + " bytes)");
+			} catch (SocketException e) {
+				log.debug("Socket exception during data transfer", e);
+				reply(session, FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
+						"Data connection closed; transfer aborted.");
+				return;
+			} catch (ZipException e) {
+				log.debug("Invalid compressed data", e);
+				reply(session, FtpReply.REPLY_451_REQUESTED_ACTION_ABORTED,
+						"Requested action aborted: " + e.getMessage());
+				return;
+			} catch (IOException e) {
+				log.debug("IOException during data transfer", e);
+				reply(session, FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
+						"Requested action aborted: " + e.getMessage());
+				return;
+			} finally {
+				closeQuietly(out);
+			}
+
+			if (type == Type.STOU) {
+				reply(session, FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "Transfer complete for STOU FILE: "
+						+ fileName);
+			} else {
+				reply(session, FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "Closing data connection.");
+			}
+		} finally {
+			session.getDataConnection().closeDataConnection();
+		}
+	}
+
+	/**
+	 * Get a file which does not exist yet. The name is the argument or "ftp.dat" inside
+	 * the argument directory, a timestamp is appended while the name is taken
+	 *
+	 * @return file or null if the name is invalid
+	 */
+	private FileObject getUniqueFile(FtpIoSession session, String pathName) throws FtpException {
+		String prefix = UNIQUE_PREFIX;
+		if (pathName != null) {
+			FileObject dir = getFileObject(session, pathName);
+			prefix = dir != null && dir.isDirectory() ? dir.getFullName() + "/" + UNIQUE_PREFIX : pathName;
+		}
+		FileObject file = getFileObject(session, prefix);
+		while (file != null && file.doesExist()) {
+			file = getFileObject(session, prefix + "." + System.currentTimeMillis());
+		}
+		return file;
+	}
+}
@@ -7,7 +7,9 @@ import org.apache.log4j.Logger;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Implemented User to add group persmissions
@@ -30,6 +32,9 @@ public class HdfsUser implements User, Serializable {
 
 	private ArrayList<String> groups = new ArrayList<String>();
 
+	// the same groups for constant time membership checks
+	private Set<String> groupSet = new HashSet<String>();
+
 	private Logger log = Logger.getLogger(HdfsUser.class);
 
 	/**
@@ -75,12 +80,7 @@ public class HdfsUser implements User, Serializable {
 	 * @return true if the user id a member of the group
 	 */
 	public boolean isGroupMember(String group) {
-		for (String userGroup : groups) {
-			if (userGroup.equals(group)) {
-				return true;
-			}
-		}
-		return false;
+		return groupSet.contains(group);
 	}
 
 	/**
@@ -93,6 +93,7 @@ public class HdfsUser implements User, Serializable {
 			log.error("User " + name + " is not a memer of any group");
 		}
 		this.groups = groups;
+		this.groupSet = new HashSet<String>(groups);
 	}
 
 	/**
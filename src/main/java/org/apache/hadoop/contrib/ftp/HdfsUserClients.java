@@ -0,0 +1,266 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HDFS clients which act as the ftp users. Each client connects with the name
+ * and the groups of its user, so the NameNode checks permissions and sets the
+ * owner of new files itself. Clients are shared by the sessions of a user and
+ * closed when no session has used them for some time. A client is created outside
+ * the cache lock, only the sessions of its user wait for it. Clients of a NameNode
+ * which is no more active are closed on failover and created again on the next use
+ */
+public class HdfsUserClients {
+
+	private final static Logger log = LoggerFactory.getLogger(HdfsUserClients.class);
+
+	/**
+	 * Creates a client which acts as a user
+	 */
+	public interface ClientFactory {
+		/**
+		 * Create and initialize a client
+		 *
+		 * @param user user to act as
+		 * @param uri  NameNode URI
+		 * @return new client
+		 * @throws IOException if the client can't be initialized
+		 */
+		DistributedFileSystem create(HdfsUser user, URI uri) throws IOException;
+	}
+
+	private static class Entry {
+		// null after failover until the next use
+		private DistributedFileSystem dfs;
+		private URI uri;
+		private int refs = 0;
+		// callers creating the client, the entry is not evicted meanwhile
+		private int connecting = 0;
+		private long lastUsed = System.currentTimeMillis();
+	}
+
+	private final ClientFactory factory;
+
+	private final HdfsNameNodes nameNodes;
+
+	private final long idleTimeout;
+
+	private final Map<String, Entry> clients = new HashMap<String, Entry>();
+
+	/**
+	 * Constructs the cache
+	 *
+	 * @param idleTimeout time in milliseconds after which a client without sessions is closed
+	 * @param nameNodes   NameNode endpoints
+	 * @param factory     factory of the clients
+	 */
+	public HdfsUserClients(long idleTimeout, HdfsNameNodes nameNodes, ClientFactory factory) {
+		this.idleTimeout = idleTimeout;
+		this.nameNodes = nameNodes;
+		this.factory = factory;
+		nameNodes.addListener(new HdfsNameNodes.Listener() {
+			public void failover(URI failed, URI active) {
+				dropClients(failed);
+			}
+		});
+	}
+
+	/**
+	 * Get client of the user, creating it if necessary
+	 *
+	 * @param user logged in user
+	 * @return client acting as the user
+	 * @throws IOException if the client can't be initialized
+	 */
+	public DistributedFileSystem get(HdfsUser user) throws IOException {
+		Entry entry;
+		synchronized (this) {
+			entry = getEntry(user);
+			entry.lastUsed = System.currentTimeMillis();
+		}
+		return connect(entry, user);
+	}
+
+	/**
+	 * Get entry of the user, creating it if necessary. Called under the lock
+	 */
+	private Entry getEntry(HdfsUser user) {
+		Entry entry = clients.get(user.getName());
+		if (entry == null) {
+			entry = new Entry();
+			clients.put(user.getName(), entry);
+		}
+		return entry;
+	}
+
+	/**
+	 * Get client of the entry connected to the active NameNode, create it if necessary
+	 */
+	private DistributedFileSystem connect(Entry entry, HdfsUser user) throws IOException {
+		URI active = nameNodes.getActive();
+		synchronized (entry) {
+			DistributedFileSystem stale = null;
+			synchronized (this) {
+				if (entry.dfs != null && !active.equals(entry.uri)) {
+					stale = entry.dfs;
+					entry.dfs = null;
+				}
+				if (entry.dfs != null) {
+					return entry.dfs;
+				}
+				entry.connecting++;
+			}
+			if (stale != null) {
+				closeQuietly(stale);
+			}
+			DistributedFileSystem dfs = null;
+			try {
+				dfs = factory.create(user, active);
+				log.info("HDFS client for user " + user.getName() + " initialized for " + active);
+				return dfs;
+			} finally {
+				synchronized (this) {
+					entry.connecting--;
+					if (dfs != null) {
+						entry.dfs = dfs;
+						entry.uri = active;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Close clients of a NameNode, they are created again on the next use
+	 *
+	 * @param uri NameNode URI
+	 */
+	private void dropClients(URI uri) {
+		List<DistributedFileSystem> failed = new ArrayList<DistributedFileSystem>();
+		synchronized (this) {
+			for (Entry entry : clients.values()) {
+				if (entry.dfs != null && uri.equals(entry.uri)) {
+					failed.add(entry.dfs);
+					entry.dfs = null;
+				}
+			}
+		}
+		close(failed);
+	}
+
+	/**
+	 * Mark the client of the user as used by a session
+	 *
+	 * @param user logged in user
+	 * @throws IOException if the client can't be initialized
+	 */
+	public void acquire(HdfsUser user) throws IOException {
+		List<DistributedFileSystem> idle;
+		Entry entry;
+		synchronized (this) {
+			entry = getEntry(user);
+			entry.refs++;
+			entry.lastUsed = System.currentTimeMillis();
+			idle = evict();
+		}
+		close(idle);
+		boolean connected = false;
+		try {
+			connect(entry, user);
+			connected = true;
+		} finally {
+			if (!connected) {
+				synchronized (this) {
+					entry.refs--;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Mark the client of the user as no more used by a session
+	 *
+	 * @param user user of the session
+	 */
+	public void release(HdfsUser user) {
+		List<DistributedFileSystem> idle;
+		synchronized (this) {
+			Entry entry = clients.get(user.getName());
+			if (entry != null && entry.refs > 0) {
+				entry.refs--;
+				entry.lastUsed = System.currentTimeMillis();
+			}
+			idle = evict();
+		}
+		close(idle);
+	}
+
+	/**
+	 * Remove clients without sessions which have been idle for too long. Called under the lock
+	 */
+	private List<DistributedFileSystem> evict() {
+		long now = System.currentTimeMillis();
+		List<DistributedFileSystem> idle = new ArrayList<DistributedFileSystem>();
+		Iterator<Map.Entry<String, Entry>> it = clients.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<String, Entry> e = it.next();
+			if (e.getValue().refs == 0 && e.getValue().connecting == 0 && now - e.getValue().lastUsed > idleTimeout) {
+				it.remove();
+				if (e.getValue().dfs != null) {
+					idle.add(e.getValue().dfs);
+				}
+				log.info("HDFS client for user " + e.getKey() + " closed");
+			}
+		}
+		return idle;
+	}
+
+	/**
+	 * Close all clients
+	 */
+	public void close() {
+		List<DistributedFileSystem> all = new ArrayList<DistributedFileSystem>();
+		synchronized (this) {
+			for (Entry entry : clients.values()) {
+				if (entry.dfs != null) {
+					all.add(entry.dfs);
+				}
+			}
+			clients.clear();
+		}
+		close(all);
+	}
+
+	private static void close(List<DistributedFileSystem> clients) {
+		for (DistributedFileSystem dfs : clients) {
+			closeQuietly(dfs);
+		}
+	}
+
+	private static void closeQuietly(DistributedFileSystem dfs) {
+		try {
+			dfs.close();
+		} catch (IOException e) {
+			log.debug("Can't close HDFS client", e);
+		}
+	}
+
+	/**
+	 * Get number of open clients
+	 *
+	 * @return number of clients
+	 */
+	public synchronized int size() {
+		return clients.size();
+	}
+}
@@ -0,0 +1,327 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Output stream which writes to HDFS on a background thread.
+ * Data from the data connection is copied to a bounded ring of pooled buffers,
+ * so pauses of the DataNode pipeline don't stall the client connection.
+ * A failed HDFS write is reported by the next write, flush or close.
+ * The producer never waits for a writer which has stopped: a writer interrupted
+ * or stopped by the executor marks the stream failed, and close waits for the
+ * writer to finish before the HDFS stream is closed
+ */
+public class HdfsWriteBehindOutputStream extends OutputStream {
+
+	private final static Logger log = LoggerFactory.getLogger(HdfsWriteBehindOutputStream.class);
+
+	private static class Chunk {
+		private final ByteBuffer buf;
+		// set for flush and close markers
+		private final CountDownLatch done;
+		private final boolean last;
+
+		private Chunk(ByteBuffer buf, CountDownLatch done, boolean last) {
+			this.buf = buf;
+			this.done = done;
+			this.last = last;
+		}
+	}
+
+	private final OutputStream out;
+
+	private final HdfsBufferPool pool;
+
+	private final BlockingQueue<ByteBuffer> free;
+
+	private final BlockingQueue<Chunk> filled;
+
+	// the writer and the producer, buffers go back to the pool when both are done
+	private final AtomicInteger owners = new AtomicInteger(2);
+
+	private volatile IOException error;
+
+	// counted down when the writer has returned and no longer touches the HDFS stream
+	private final CountDownLatch writerExited = new CountDownLatch(1);
+
+	private volatile Thread writer;
+
+	// set by close when no close marker could be queued, the writer stops at once
+	private volatile boolean stopped = false;
+
+	private boolean closed = false;
+
+	private ByteBuffer current;
+
+	/**
+	 * Constructs the stream and starts the writer
+	 *
+	 * @param out        stream to write to
+	 * @param depth      number of buffers between the data connection and HDFS
+	 * @param bufferSize size of a buffer
+	 * @param pool       pool to take buffers from
+	 * @param executor   executor to run the writer
+	 */
+	public HdfsWriteBehindOutputStream(OutputStream out, int depth, int bufferSize, HdfsBufferPool pool,
+									   ExecutorService executor) {
+		this.out = out;
+		this.pool = pool;
+		this.free = new ArrayBlockingQueue<ByteBuffer>(depth);
+		this.filled = new ArrayBlockingQueue<Chunk>(depth + 1);
+		for (int i = 0; i < depth; i++) {
+			free.add(pool.acquire(bufferSize));
+		}
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					writeBehind();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			for (ByteBuffer buf : free) {
+				pool.release(buf);
+			}
+			throw e;
+		}
+	}
+
+	private void writeBehind() {
+		writer = Thread.currentThread();
+		boolean finished = false;
+		try {
+			while (!stopped) {
+				Chunk chunk = filled.take();
+				if (chunk.buf != null) {
+					if (error == null) {
+						try {
+							HdfsChannels.write(out, chunk.buf);
+						} catch (IOException e) {
+							log.debug("write-behind failed", e);
+							error = e;
+						}
+					}
+					free.put(chunk.buf);
+				}
+				if (chunk.done != null) {
+					if (error == null && !chunk.last) {
+						try {
+							out.flush();
+						} catch (IOException e) {
+							error = e;
+						}
+					}
+					chunk.done.countDown();
+				}
+				if (chunk.last) {
+					finished = true;
+					return;
+				}
+			}
+		} catch (InterruptedException e) {
+			log.debug("write-behind interrupted");
+		} finally {
+			if (!finished) {
+				if (error == null) {
+					error = new InterruptedIOException("HDFS writer stopped");
+				}
+				// nobody is going to take the markers any more
+				for (Chunk chunk : filled) {
+					if (chunk.done != null) {
+						chunk.done.countDown();
+					}
+				}
+			}
+			writer = null;
+			done();
+			writerExited.countDown();
+		}
+	}
+
+	/**
+	 * Called by the writer and by the producer when they are done with the buffers
+	 */
+	private void done() {
+		if (owners.decrementAndGet() == 0) {
+			pool.release(current);
+			for (ByteBuffer buf : free) {
+				pool.release(buf);
+			}
+			for (Chunk chunk : filled) {
+				pool.release(chunk.buf);
+			}
+		}
+	}
+
+	private void checkError() throws IOException {
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	/**
+	 * Fail if the writer has stopped, so nobody waits for it forever
+	 */
+	private void checkWriter() throws IOException {
+		if (writerExited.getCount() == 0) {
+			checkError();
+			throw new IOException("HDFS writer stopped");
+		}
+	}
+
+	private ByteBuffer takeFree() throws IOException {
+		try {
+			while (true) {
+				checkError();
+				checkWriter();
+				ByteBuffer buf = free.poll(100, TimeUnit.MILLISECONDS);
+				if (buf != null) {
+					buf.clear();
+					return buf;
+				}
+			}
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("Interrupted while waiting for HDFS writer");
+		}
+	}
+
+	private void put(Chunk chunk) throws IOException {
+		try {
+			while (!filled.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+				checkWriter();
+			}
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("Interrupted while waiting for HDFS writer");
+		}
+	}
+
+	private void await(CountDownLatch done) throws IOException {
+		try {
+			while (!done.await(100, TimeUnit.MILLISECONDS)) {
+				checkWriter();
+			}
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("Interrupted while waiting for HDFS writer");
+		}
+	}
+
+	/**
+	 * Stop the writer without waiting for the queued buffers
+	 */
+	private void stopWriter() {
+		stopped = true;
+		Thread thread = writer;
+		if (thread != null) {
+			thread.interrupt();
+		}
+	}
+
+	/**
+	 * Wait until the writer has returned, it may still be writing to the HDFS stream
+	 */
+	private void joinWriter() {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				writerExited.await();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Pass the partially filled buffer to the writer
+	 */
+	private void submitCurrent() throws IOException {
+		if (current != null && current.position() > 0) {
+			current.flip();
+			// kept as current until queued, so a failed put doesn't lose the buffer
+			put(new Chunk(current, null, false));
+			current = null;
+		}
+	}
+
+	public void write(int b) throws IOException {
+		write(new byte[]{(byte) b}, 0, 1);
+	}
+
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (closed) {
+			throw new IOException("Stream is closed");
+		}
+		checkError();
+		while (len > 0) {
+			if (current == null) {
+				current = takeFree();
+			}
+			int n = Math.min(len, current.remaining());
+			current.put(b, off, n);
+			off += n;
+			len -= n;
+			if (!current.hasRemaining()) {
+				submitCurrent();
+			}
+		}
+	}
+
+	/**
+	 * Waits until all buffered data is written to HDFS and flushes it
+	 */
+	public void flush() throws IOException {
+		if (closed) {
+			return;
+		}
+		checkError();
+		submitCurrent();
+		CountDownLatch done = new CountDownLatch(1);
+		put(new Chunk(null, done, false));
+		await(done);
+		checkError();
+	}
+
+	/**
+	 * Waits until all buffered data is written to HDFS and closes the HDFS stream
+	 */
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		boolean queued = false;
+		try {
+			submitCurrent();
+			CountDownLatch done = new CountDownLatch(1);
+			put(new Chunk(null, done, true));
+			queued = true;
+			await(done);
+		} finally {
+			try {
+				if (!queued) {
+					stopWriter();
+				}
+				joinWriter();
+				out.close();
+			} finally {
+				done();
+			}
+		}
+		checkError();
+	}
+}
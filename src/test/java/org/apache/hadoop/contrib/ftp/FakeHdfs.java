@@ -0,0 +1,478 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PositionedReadable;
+import org.apache.hadoop.fs.Seekable;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory HDFS namespace for tests. Clients are DistributedFileSystem subclasses
+ * which never connect anywhere; a NameNode can be taken down to test failover
+ */
+class FakeHdfs {
+
+	private final Map<String, byte[]> files = new HashMap<String, byte[]>();
+
+	private final Map<String, Long> modificationTimes = new HashMap<String, Long>();
+
+	private final Set<String> dirs = new HashSet<String>();
+
+	private final Set<URI> down = new HashSet<URI>();
+
+	private long clock = 1;
+
+	// simulated NameNode latency of every metadata call
+	private volatile long latency = 0;
+
+	final AtomicInteger getFileStatusCalls = new AtomicInteger();
+
+	final AtomicInteger listStatusCalls = new AtomicInteger();
+
+	final AtomicInteger listPathsCalls = new AtomicInteger();
+
+	// entries per page of DFSClient.listPaths
+	private volatile int pageSize = 1000;
+
+	final AtomicInteger openCalls = new AtomicInteger();
+
+	final List<Client> clients = new CopyOnWriteArrayList<Client>();
+
+	FakeHdfs() {
+		dirs.add("/");
+	}
+
+	/**
+	 * Make the gateway use this namespace through the given NameNode URIs
+	 *
+	 * @param uris comma separated NameNode URIs
+	 * @return this namespace
+	 */
+	FakeHdfs install(String uris) {
+		HdfsOverFtpSystem.setClientFactory(factory());
+		HdfsOverFtpSystem.setHDFS_URI(uris);
+		return this;
+	}
+
+	/**
+	 * Get factory of clients of this namespace
+	 */
+	HdfsSharedClient.ClientFactory factory() {
+		return new HdfsSharedClient.ClientFactory() {
+			public DistributedFileSystem create(URI uri) throws IOException {
+				return newClient(uri);
+			}
+		};
+	}
+
+	Client newClient(URI uri) throws IOException {
+		synchronized (this) {
+			if (down.contains(uri)) {
+				throw new IOException("Connection refused: " + uri);
+			}
+		}
+		Client client = new Client(uri);
+		clients.add(client);
+		return client;
+	}
+
+	synchronized void setDown(URI uri, boolean isDown) {
+		if (isDown) {
+			down.add(uri);
+		} else {
+			down.remove(uri);
+		}
+	}
+
+	void setPageSize(int pageSize) {
+		this.pageSize = pageSize;
+	}
+
+	void setLatency(long latency) {
+		this.latency = latency;
+	}
+
+	synchronized void putFile(String path, byte[] data) {
+		files.put(path, data);
+		modificationTimes.put(path, clock++);
+		for (Path p = new Path(path).getParent(); p != null; p = p.getParent()) {
+			dirs.add(p.toUri().getPath());
+		}
+	}
+
+	synchronized byte[] getFile(String path) {
+		return files.get(path);
+	}
+
+	synchronized boolean exists(String path) {
+		return files.containsKey(path) || dirs.contains(path);
+	}
+
+	static byte[] data(int length) {
+		byte[] data = new byte[length];
+		for (int i = 0; i < length; i++) {
+			data[i] = (byte) (i * 31 + i / 4093);
+		}
+		return data;
+	}
+
+	private synchronized FileStatus status(String path) throws FileNotFoundException {
+		byte[] data = files.get(path);
+		if (data != null) {
+			long mtime = modificationTimes.get(path);
+			return new FileStatus(data.length, false, 3, 128 * 1024 * 1024, mtime, mtime,
+					new FsPermission((short) 0644), "hdfs", "supergroup", new Path(path));
+		}
+		if (dirs.contains(path)) {
+			return new FileStatus(0, true, 0, 0, 0, 0, new FsPermission((short) 0755), "hdfs", "supergroup",
+					new Path(path));
+		}
+		throw new FileNotFoundException("File does not exist: " + path);
+	}
+
+	private synchronized FileStatus[] list(String dir) throws FileNotFoundException {
+		if (!dirs.contains(dir)) {
+			return null;
+		}
+		List<FileStatus> entries = new ArrayList<FileStatus>();
+		Set<String> paths = new HashSet<String>(files.keySet());
+		paths.addAll(dirs);
+		for (String path : paths) {
+			Path parent = new Path(path).getParent();
+			if (parent != null && parent.toUri().getPath().equals(dir)) {
+				entries.add(status(path));
+			}
+		}
+		return entries.toArray(new FileStatus[entries.size()]);
+	}
+
+	private static boolean isBelow(String path, String dir) {
+		return path.startsWith(dir.endsWith("/") ? dir : dir + "/");
+	}
+
+	/**
+	 * Lists directories in pages like DFSClient.listPaths, entries are sorted by name
+	 */
+	class Lister {
+		private final Client client;
+
+		private Lister(Client client) {
+			this.client = client;
+		}
+
+		public Listing listPaths(String src, byte[] startAfter) throws IOException {
+			listPathsCalls.incrementAndGet();
+			client.call();
+			FileStatus[] all = list(src);
+			if (all == null) {
+				return null;
+			}
+			Arrays.sort(all, new Comparator<FileStatus>() {
+				public int compare(FileStatus a, FileStatus b) {
+					return a.getPath().getName().compareTo(b.getPath().getName());
+				}
+			});
+			String after = new String(startAfter, "UTF-8");
+			List<Entry> page = new ArrayList<Entry>();
+			int remaining = 0;
+			for (FileStatus status : all) {
+				if (status.getPath().getName().compareTo(after) <= 0) {
+					continue;
+				}
+				if (page.size() < pageSize) {
+					page.add(new Entry(status));
+				} else {
+					remaining++;
+				}
+			}
+			return new Listing(page.toArray(new Entry[page.size()]), remaining);
+		}
+	}
+
+	/**
+	 * Page of a listing like DirectoryListing
+	 */
+	static class Listing {
+		private final Entry[] entries;
+		private final int remaining;
+
+		private Listing(Entry[] entries, int remaining) {
+			this.entries = entries;
+			this.remaining = remaining;
+		}
+
+		public Entry[] getPartialListing() {
+			return entries;
+		}
+
+		public boolean hasMore() {
+			return remaining > 0;
+		}
+
+		public byte[] getLastName() throws IOException {
+			return entries[entries.length - 1].status.getPath().getName().getBytes("UTF-8");
+		}
+	}
+
+	/**
+	 * Entry of a page like HdfsFileStatus
+	 */
+	static class Entry {
+		private final FileStatus status;
+
+		private Entry(FileStatus status) {
+			this.status = status;
+		}
+
+		public FileStatus makeQualified(URI uri, Path dir) {
+			return status;
+		}
+	}
+
+	/**
+	 * Client of the namespace connected to one NameNode URI
+	 */
+	class Client extends DistributedFileSystem {
+		private final URI uri;
+		private volatile boolean closed = false;
+
+		private Client(URI uri) {
+			this.uri = uri;
+		}
+
+		URI getEndpoint() {
+			return uri;
+		}
+
+		boolean isClosed() {
+			return closed;
+		}
+
+		private void call() throws IOException {
+			if (closed) {
+				throw new IOException("Filesystem closed");
+			}
+			long delay = latency;
+			if (delay > 0) {
+				try {
+					Thread.sleep(delay);
+				} catch (InterruptedException e) {
+					throw new IOException("Interrupted");
+				}
+			}
+			synchronized (FakeHdfs.this) {
+				if (down.contains(uri)) {
+					throw new IOException("Call to " + uri + " failed on connection exception");
+				}
+			}
+		}
+
+		public FileStatus getFileStatus(Path f) throws IOException {
+			getFileStatusCalls.incrementAndGet();
+			call();
+			return status(f.toUri().getPath());
+		}
+
+		public FileStatus[] listStatus(Path f) throws IOException {
+			listStatusCalls.incrementAndGet();
+			call();
+			return list(f.toUri().getPath());
+		}
+
+		/**
+		 * DFSClient of HDFS 0.21 and later, found through reflection by HdfsDirectoryListing
+		 */
+		public Lister getClient() {
+			return new Lister(this);
+		}
+
+		public boolean mkdirs(Path f) throws IOException {
+			call();
+			synchronized (FakeHdfs.this) {
+				for (Path p = f; p != null; p = p.getParent()) {
+					dirs.add(p.toUri().getPath());
+				}
+			}
+			return true;
+		}
+
+		public boolean delete(Path f, boolean recursive) throws IOException {
+			call();
+			String path = f.toUri().getPath();
+			synchronized (FakeHdfs.this) {
+				if (files.remove(path) != null) {
+					return true;
+				}
+				if (!dirs.remove(path)) {
+					return false;
+				}
+				for (Iterator<String> it = files.keySet().iterator(); it.hasNext(); ) {
+					if (isBelow(it.next(), path)) {
+						it.remove();
+					}
+				}
+				for (Iterator<String> it = dirs.iterator(); it.hasNext(); ) {
+					if (isBelow(it.next(), path)) {
+						it.remove();
+					}
+				}
+				return true;
+			}
+		}
+
+		public boolean rename(Path src, Path dst) throws IOException {
+			call();
+			String from = src.toUri().getPath();
+			String to = dst.toUri().getPath();
+			synchronized (FakeHdfs.this) {
+				if (FakeHdfs.this.exists(to) || !files.containsKey(from)) {
+					return false;
+				}
+				files.put(to, files.remove(from));
+				modificationTimes.put(to, clock++);
+				return true;
+			}
+		}
+
+		public FSDataOutputStream create(Path f) throws IOException {
+			call();
+			final String path = f.toUri().getPath();
+			putFile(path, new byte[0]);
+			return new FSDataOutputStream(new ByteArrayOutputStream() {
+				public void close() throws IOException {
+					super.close();
+					putFile(path, toByteArray());
+				}
+			});
+		}
+
+		public FSDataOutputStream append(final Path f) throws IOException {
+			call();
+			final String path = f.toUri().getPath();
+			final byte[] existing = getFile(path);
+			if (existing == null) {
+				throw new FileNotFoundException("File does not exist: " + path);
+			}
+			ByteArrayOutputStream out = new ByteArrayOutputStream() {
+				public void close() throws IOException {
+					super.close();
+					putFile(path, toByteArray());
+				}
+			};
+			out.write(existing);
+			return new FSDataOutputStream(out);
+		}
+
+		public FSDataInputStream open(Path f) throws IOException {
+			openCalls.incrementAndGet();
+			call();
+			byte[] data = getFile(f.toUri().getPath());
+			if (data == null) {
+				throw new FileNotFoundException("File does not exist: " + f);
+			}
+			return new FSDataInputStream(new Stream(this, data));
+		}
+
+		public FSDataInputStream open(Path f, int bufferSize) throws IOException {
+			return open(f);
+		}
+
+		public void setOwner(Path p, String username, String groupname) throws IOException {
+			call();
+		}
+
+		public void close() throws IOException {
+			closed = true;
+		}
+	}
+
+	/**
+	 * Seekable stream over file data, fails like DFSInputStream once its client is closed
+	 */
+	private static class Stream extends InputStream implements Seekable, PositionedReadable {
+		private final Client client;
+		private final byte[] data;
+		private int pos = 0;
+
+		private Stream(Client client, byte[] data) {
+			this.client = client;
+			this.data = data;
+		}
+
+		private void check() throws IOException {
+			if (client.isClosed()) {
+				throw new IOException("Filesystem closed");
+			}
+		}
+
+		public int read() throws IOException {
+			check();
+			return pos < data.length ? data[pos++] & 0xff : -1;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = read(pos, b, off, len);
+			if (n > 0) {
+				pos += n;
+			}
+			return n;
+		}
+
+		public int read(long position, byte[] b, int off, int len) throws IOException {
+			check();
+			if (position >= data.length) {
+				return -1;
+			}
+			int n = (int) Math.min(len, data.length - position);
+			System.arraycopy(data, (int) position, b, off, n);
+			return n;
+		}
+
+		public void readFully(long position, byte[] b, int off, int len) throws IOException {
+			if (read(position, b, off, len) < len) {
+				throw new EOFException();
+			}
+		}
+
+		public void readFully(long position, byte[] b) throws IOException {
+			readFully(position, b, 0, b.length);
+		}
+
+		public void seek(long position) throws IOException {
+			check();
+			if (position > data.length) {
+				throw new EOFException("Cannot seek after EOF");
+			}
+			pos = (int) position;
+		}
+
+		public long getPos() {
+			return pos;
+		}
+
+		public boolean seekToNewSource(long targetPos) {
+			return false;
+		}
+	}
+}
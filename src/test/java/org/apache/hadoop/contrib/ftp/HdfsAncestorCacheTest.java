@@ -0,0 +1,49 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.apache.hadoop.fs.Path;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Ancestors found before a directory was created or the ancestor removed are not cached
+ */
+public class HdfsAncestorCacheTest {
+
+	private final HdfsAncestorCache cache = new HdfsAncestorCache(60000, 100);
+
+	private final Path missing = new Path("/data/new/dir");
+
+	private final Path ancestor = new Path("/data");
+
+	@Test
+	public void ancestorIsCachedWithoutChanges() {
+		long generation = cache.getGeneration(missing);
+		cache.invalidateCreated(new Path("/logs/new"));
+		cache.invalidateRemoved(new Path("/logs/old"));
+		cache.put(missing, ancestor, generation);
+		assertEquals("/data", cache.get(missing));
+	}
+
+	@Test
+	public void directoryCreatedDuringLookupIsNotCached() {
+		long generation = cache.getGeneration(missing);
+		cache.invalidateCreated(new Path("/data/new/dir/file"));
+		cache.put(missing, ancestor, generation);
+		assertNull(cache.get(missing));
+
+		generation = cache.getGeneration(missing);
+		cache.invalidateCreated(new Path("/data/new"));
+		cache.put(missing, ancestor, generation);
+		assertNull(cache.get(missing));
+	}
+
+	@Test
+	public void ancestorRemovedDuringLookupIsNotCached() {
+		long generation = cache.getGeneration(missing);
+		cache.invalidateRemoved(ancestor);
+		cache.put(missing, ancestor, generation);
+		assertNull(cache.get(missing));
+	}
+}
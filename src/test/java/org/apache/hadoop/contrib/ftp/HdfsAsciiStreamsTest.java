@@ -0,0 +1,52 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static org.junit.Assert.assertEquals;
+
+public class HdfsAsciiStreamsTest {
+
+	private static String toNetwork(String text, int chunk) throws IOException {
+		InputStream in = HdfsAsciiStreams.toNetwork(new ByteArrayInputStream(text.getBytes("US-ASCII")));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] b = new byte[chunk];
+		int n;
+		while ((n = in.read(b, 0, chunk)) != -1) {
+			out.write(b, 0, n);
+		}
+		return out.toString("US-ASCII");
+	}
+
+	private static String fromNetwork(String text, int chunk) throws IOException {
+		ByteArrayOutputStream stored = new ByteArrayOutputStream();
+		OutputStream out = HdfsAsciiStreams.fromNetwork(stored);
+		byte[] data = text.getBytes("US-ASCII");
+		for (int i = 0; i < data.length; i += chunk) {
+			out.write(data, i, Math.min(chunk, data.length - i));
+		}
+		out.close();
+		return stored.toString("US-ASCII");
+	}
+
+	@Test
+	public void lineFeedsAreSentAsCrLf() throws IOException {
+		for (int chunk = 1; chunk <= 8; chunk++) {
+			assertEquals("a\r\nb\r\n\r\nc", toNetwork("a\nb\n\nc", chunk));
+			assertEquals("a\r\nb\r\n", toNetwork("a\r\nb\n", chunk));
+		}
+	}
+
+	@Test
+	public void crLfIsStoredAsLineFeed() throws IOException {
+		for (int chunk = 1; chunk <= 8; chunk++) {
+			assertEquals("a\nb\n\nc", fromNetwork("a\r\nb\r\n\r\nc", chunk));
+			assertEquals("a\rb\r", fromNetwork("a\rb\r", chunk));
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Every caller is admitted in the queue of its own user before it joins a
+ * coalesced NameNode call
+ */
+public class HdfsCoalescedAdmissionTest {
+
+	private static final String FILE = "/coalesced/file.bin";
+
+	private FakeHdfs hdfs;
+
+	@Before
+	public void setUp() {
+		hdfs = new FakeHdfs().install("hdfs://nn1:9000");
+		HdfsOverFtpSystem.setNameNodeFailover(3, 0, 1000);
+		HdfsOverFtpSystem.setClientProbeInterval(0);
+		// every status call goes to HDFS
+		HdfsOverFtpSystem.setMetadataCache(0, 0, 0);
+		hdfs.putFile(FILE, FakeHdfs.data(10));
+	}
+
+	@After
+	public void tearDown() {
+		hdfs.setLatency(0);
+		HdfsOverFtpSystem.setAdmission(0, 10000);
+		HdfsOverFtpSystem.setMetadataCache(5000, 1000, 10000);
+	}
+
+	/**
+	 * Start a status call of the user in another thread and wait until it reached HDFS
+	 */
+	private Thread startCall(String user) throws InterruptedException {
+		final HdfsFileObject file = new HdfsFileObject(FILE, HdfsPermissionCheckerTest.user(user, user));
+		int calls = hdfs.getFileStatusCalls.get();
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					file.getFileStatus();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		});
+		thread.start();
+		long deadline = System.currentTimeMillis() + 5000;
+		while (hdfs.getFileStatusCalls.get() == calls) {
+			assertTrue(System.currentTimeMillis() < deadline);
+			Thread.sleep(5);
+		}
+		return thread;
+	}
+
+	@Test(timeout = 10000)
+	public void joiningCallerWaitsForItsOwnAdmission() throws Exception {
+		HdfsOverFtpSystem.setAdmission(1, 200);
+		hdfs.setLatency(1000);
+		Thread leader = startCall("alice");
+
+		// the only slot is taken by alice, bob may not ride on her call
+		try {
+			new HdfsFileObject(FILE, HdfsPermissionCheckerTest.user("bob", "bob")).getFileStatus();
+			fail("call joined without admission");
+		} catch (HdfsBusyException e) {
+			// expected
+		}
+		assertEquals(1, HdfsOverFtpSystem.getAdmission().getRejected());
+		leader.join();
+		assertEquals(1, hdfs.getFileStatusCalls.get());
+	}
+
+	@Test(timeout = 10000)
+	public void admittedCallersShareOneCall() throws Exception {
+		HdfsOverFtpSystem.setAdmission(2, 5000);
+		hdfs.setLatency(300);
+		long coalesced = HdfsOverFtpSystem.getCoalescer().getCoalesced();
+		Thread leader = startCall("alice");
+
+		FileStatus status = new HdfsFileObject(FILE, HdfsPermissionCheckerTest.user("bob", "bob")).getFileStatus();
+		assertNotNull(status);
+		leader.join();
+
+		assertEquals(1, hdfs.getFileStatusCalls.get());
+		assertEquals(coalesced + 1, HdfsOverFtpSystem.getCoalescer().getCoalesced());
+		assertEquals(2, HdfsOverFtpSystem.getAdmission().getAdmitted());
+	}
+}
@@ -0,0 +1,52 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+
+public class HdfsDeflateTest {
+
+	private static byte[] compress(byte[] data) {
+		Deflater deflater = new Deflater();
+		deflater.setInput(data);
+		deflater.finish();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buf = new byte[4096];
+		while (!deflater.finished()) {
+			out.write(buf, 0, deflater.deflate(buf));
+		}
+		deflater.end();
+		return out.toByteArray();
+	}
+
+	@Test
+	public void completeStreamIsInflated() throws IOException {
+		byte[] data = FakeHdfs.data(1024 * 1024);
+		ByteArrayOutputStream stored = new ByteArrayOutputStream();
+		OutputStream out = HdfsDeflate.inflate(stored);
+		out.write(compress(data));
+		out.close();
+		assertArrayEquals(data, stored.toByteArray());
+	}
+
+	@Test
+	public void truncatedStreamFailsOnClose() throws IOException {
+		byte[] compressed = compress(FakeHdfs.data(1024 * 1024));
+		OutputStream out = HdfsDeflate.inflate(new ByteArrayOutputStream());
+		out.write(Arrays.copyOf(compressed, compressed.length - 10));
+		try {
+			out.close();
+			fail("truncated stream accepted");
+		} catch (ZipException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Directories are listed page by page through DFSClient.listPaths
+ */
+public class HdfsDirectoryListingTest {
+
+	private FakeHdfs hdfs;
+
+	private HdfsUser user;
+
+	@Before
+	public void setUp() {
+		hdfs = new FakeHdfs().install("hdfs://nn1:9000");
+		HdfsOverFtpSystem.setNameNodeFailover(3, 0, 1000);
+		HdfsOverFtpSystem.setClientProbeInterval(0);
+		for (int i = 0; i < 5; i++) {
+			hdfs.putFile("/landing/part-" + i, new byte[i]);
+		}
+		user = HdfsPermissionCheckerTest.user("hdfs", "supergroup");
+	}
+
+	@Test
+	public void directoryIsListedInPages() throws IOException {
+		hdfs.setPageSize(2);
+		HdfsDirectoryListing listing = new HdfsFileObject("/landing", user).listPages();
+
+		StringBuilder names = new StringBuilder();
+		int[] sizes = new int[3];
+		for (int i = 0; i < sizes.length; i++) {
+			FileStatus[] page = listing.next();
+			sizes[i] = page.length;
+			for (FileStatus status : page) {
+				names.append(status.getPath().getName()).append(' ');
+			}
+		}
+		assertNull(listing.next());
+
+		assertEquals("part-0 part-1 part-2 part-3 part-4 ", names.toString());
+		assertEquals(2, sizes[0]);
+		assertEquals(2, sizes[1]);
+		assertEquals(1, sizes[2]);
+		assertEquals(3, hdfs.listPathsCalls.get());
+		assertEquals(0, hdfs.listStatusCalls.get());
+	}
+
+	@Test
+	public void missingDirectoryHasNoPages() throws IOException {
+		HdfsDirectoryListing listing = new HdfsDirectoryListing(HdfsOverFtpSystem.getDfs(user),
+				new Path("/missing"), user.getName());
+		assertNull(listing.next());
+	}
+}
@@ -0,0 +1,135 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Failover to the standby NameNode when the active one stops answering probes,
+ * with clients and read handles of the failed NameNode dropped
+ */
+public class HdfsFailoverTest {
+
+	private static final URI NN1 = URI.create("hdfs://nn1:9000");
+
+	private static final URI NN2 = URI.create("hdfs://nn2:9000");
+
+	private static final String FILE = "/failover/file.bin";
+
+	private final byte[] data = FakeHdfs.data(100000);
+
+	private FakeHdfs hdfs;
+
+	private HdfsUser user;
+
+	@Before
+	public void setUp() {
+		hdfs = new FakeHdfs();
+		hdfs.putFile(FILE, data);
+		user = HdfsPermissionCheckerTest.user("hdfs", "supergroup");
+	}
+
+	@After
+	public void tearDown() {
+		// stops the probes of this test
+		HdfsOverFtpSystem.setNameNodeFailover(3, 0, 1000);
+		new FakeHdfs().install("hdfs://nn1:9000");
+	}
+
+	/**
+	 * Take the NameNode down and wait until listeners registered before this call
+	 * have been notified of the failover, they are notified in order
+	 */
+	private void failOver(HdfsNameNodes nameNodes, URI uri) throws Exception {
+		final CountDownLatch notified = new CountDownLatch(1);
+		nameNodes.addListener(new HdfsNameNodes.Listener() {
+			public void failover(URI failed, URI active) {
+				notified.countDown();
+			}
+		});
+		hdfs.setDown(uri, true);
+		assertTrue("no failover from " + uri, notified.await(5, TimeUnit.SECONDS));
+	}
+
+	private byte[] read() throws IOException {
+		InputStream in = new HdfsFileObject(FILE, user).createInputStream(0);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] b = new byte[8192];
+		int n;
+		while ((n = in.read(b)) != -1) {
+			out.write(b, 0, n);
+		}
+		in.close();
+		return out.toByteArray();
+	}
+
+	@Test(timeout = 10000)
+	public void failedNameNodeIsReplacedByStandby() throws Exception {
+		HdfsNameNodes nameNodes = new HdfsNameNodes(Arrays.asList(NN1, NN2), 2, 20, 1000,
+				new HdfsNameNodes.ProbeFactory() {
+					public DistributedFileSystem create(URI uri) throws IOException {
+						return hdfs.newClient(uri);
+					}
+				});
+		final List<URI[]> failovers = new CopyOnWriteArrayList<URI[]>();
+		nameNodes.addListener(new HdfsNameNodes.Listener() {
+			public void failover(URI failed, URI active) {
+				failovers.add(new URI[]{failed, active});
+			}
+		});
+		try {
+			assertEquals(NN1, nameNodes.getActive());
+			failOver(nameNodes, NN1);
+
+			assertEquals(1, nameNodes.getFailovers());
+			assertEquals(1, failovers.size());
+			assertEquals(NN1, failovers.get(0)[0]);
+			assertEquals(NN2, failovers.get(0)[1]);
+			assertFalse(nameNodes.isActive(NN1));
+			assertTrue(nameNodes.isActive(NN2));
+		} finally {
+			nameNodes.close();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void downloadsContinueOnStandbyWithNewHandles() throws Exception {
+		hdfs.install(NN1 + "," + NN2);
+		HdfsOverFtpSystem.setNameNodeFailover(2, 20, 1000);
+		HdfsOverFtpSystem.setClientProbeInterval(0);
+		HdfsOverFtpSystem.setReadHandleCache(256, 30000);
+
+		assertArrayEquals(data, read());
+		HdfsReadHandleCache handles = HdfsOverFtpSystem.getReadHandleCache();
+		assertEquals(1, handles.size());
+
+		failOver(HdfsOverFtpSystem.getNameNodes(), NN1);
+
+		// clients and handles of the failed NameNode are gone
+		for (FakeHdfs.Client client : hdfs.clients) {
+			assertTrue(client.isClosed() || client.getEndpoint().equals(NN2));
+		}
+		assertEquals(0, handles.size());
+
+		assertArrayEquals(data, read());
+		for (FakeHdfs.Client client : hdfs.clients) {
+			assertTrue(client.isClosed() || client.getEndpoint().equals(NN2));
+		}
+	}
+}
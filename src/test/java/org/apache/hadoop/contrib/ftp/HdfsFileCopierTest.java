@@ -0,0 +1,77 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+/**
+ * SITE CPTO copies into a temporary file and replaces the target only when the
+ * copy is complete
+ */
+public class HdfsFileCopierTest {
+
+	private FakeHdfs hdfs;
+
+	private HdfsUser user;
+
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+
+	@Before
+	public void setUp() {
+		hdfs = new FakeHdfs().install("hdfs://nn1:9000");
+		HdfsOverFtpSystem.setNameNodeFailover(3, 0, 1000);
+		HdfsOverFtpSystem.setClientProbeInterval(0);
+		user = HdfsPermissionCheckerTest.user("hdfs", "supergroup");
+	}
+
+	@After
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	private HdfsFileCopier copier(String source, String target, ExecutorService executor) {
+		return new HdfsFileCopier(new HdfsFileObject(source, user), new HdfsFileObject(target, user),
+				new HdfsFileObject(HdfsFileCopier.getTempName(target), user), 2, executor);
+	}
+
+	@Test
+	public void copyReplacesTarget() throws IOException {
+		byte[] data = FakeHdfs.data(10 * 1000 * 1000 + 3);
+		hdfs.putFile("/copy/replaced.src", data);
+		hdfs.putFile("/copy/replaced.bin", new byte[]{1, 2, 3});
+
+		long copied = copier("/copy/replaced.src", "/copy/replaced.bin", executor).copy();
+
+		assertEquals(data.length, copied);
+		assertArrayEquals(data, hdfs.getFile("/copy/replaced.bin"));
+		assertFalse(hdfs.exists(HdfsFileCopier.getTempName("/copy/replaced.bin")));
+	}
+
+	@Test
+	public void failedCopyKeepsTarget() throws IOException {
+		byte[] old = {1, 2, 3};
+		hdfs.putFile("/copy/kept.src", FakeHdfs.data(1000));
+		hdfs.putFile("/copy/kept.bin", old);
+		ExecutorService stopped = Executors.newSingleThreadExecutor();
+		stopped.shutdown();
+
+		try {
+			copier("/copy/kept.src", "/copy/kept.bin", stopped).copy();
+			fail("copy without readers");
+		} catch (RejectedExecutionException expected) {
+		}
+
+		assertArrayEquals(old, hdfs.getFile("/copy/kept.bin"));
+		assertFalse(hdfs.exists(HdfsFileCopier.getTempName("/copy/kept.bin")));
+	}
+}
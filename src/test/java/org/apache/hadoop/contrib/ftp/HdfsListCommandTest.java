@@ -0,0 +1,45 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HdfsListCommandTest {
+
+	private static boolean matches(String wildcard, String name) {
+		Pattern pattern = HdfsListCommand.toPattern(wildcard);
+		return pattern.matcher(name).matches();
+	}
+
+	@Test
+	public void starMatchesAnyCharacters() {
+		assertTrue(matches("*.csv", "data.csv"));
+		assertTrue(matches("*.csv", ".csv"));
+		assertFalse(matches("*.csv", "data.csv.gz"));
+	}
+
+	@Test
+	public void questionMarkMatchesOneCharacter() {
+		assertTrue(matches("part-?", "part-1"));
+		assertFalse(matches("part-?", "part-10"));
+	}
+
+	@Test
+	public void bracketsMatchOneOfTheCharacters() {
+		assertTrue(matches("part-[0-3]", "part-2"));
+		assertFalse(matches("part-[0-3]", "part-5"));
+		assertTrue(matches("part-[!0-3]", "part-5"));
+		assertFalse(matches("part-[!0-3]", "part-2"));
+	}
+
+	@Test
+	public void otherCharactersAreLiteral() {
+		assertTrue(matches("a.b(1)+*", "a.b(1)+x"));
+		assertFalse(matches("a.b*", "axb"));
+		assertTrue(matches("a[1*", "a[10"));
+		assertTrue(matches("a[!]*", "a[!]"));
+	}
+}
@@ -0,0 +1,86 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Answers fetched before an invalidation of their path are not cached after it,
+ * invalidations of other paths don't matter
+ */
+public class HdfsMetadataCacheTest {
+
+	private final HdfsMetadataCache cache = new HdfsMetadataCache(60000, 60000, 100);
+
+	private final Path path = new Path("/data/file");
+
+	private final FileStatus status = HdfsPermissionCheckerTest.status("/data/file", 0644, "hdfs", "hdfs");
+
+	private final Path dir = new Path("/data");
+
+	@Test
+	public void statusIsCachedWithoutInvalidation() {
+		long generation = cache.getGeneration(path);
+		cache.put(path, status, generation);
+		assertNotNull(cache.get(path));
+	}
+
+	@Test
+	public void statusFetchedBeforeInvalidationIsNotCached() {
+		long generation = cache.getGeneration(path);
+		cache.invalidate(path);
+		cache.put(path, status, generation);
+		assertNull(cache.get(path));
+
+		generation = cache.getGeneration(dir);
+		cache.invalidateTree(dir);
+		cache.putListing(dir, new FileStatus[]{status}, generation);
+		assertNull(cache.get(path));
+
+		// a changed entry invalidates the listing of its directory
+		generation = cache.getGeneration(dir);
+		cache.invalidate(new Path("/data/other"));
+		cache.putListing(dir, new FileStatus[]{status}, generation);
+		assertNull(cache.get(path));
+	}
+
+	@Test
+	public void invalidationOfOtherPathsKeepsFill() {
+		long generation = cache.getGeneration(path);
+		cache.invalidate(new Path("/logs/file"));
+		cache.invalidateTree(new Path("/logs"));
+		cache.clearMissing(new Path("/data/new"));
+		cache.put(path, status, generation);
+		assertNotNull(cache.get(path));
+	}
+
+	@Test
+	public void invalidatedTreeDropsEntriesBelow() {
+		cache.put(path, status, cache.getGeneration(path));
+		cache.invalidateTree(dir);
+		assertNull(cache.get(path));
+
+		cache.put(path, status, cache.getGeneration(path));
+		assertNotNull(cache.get(path));
+	}
+
+	@Test
+	public void missingPathFetchedBeforeCreationIsNotCached() {
+		long generation = cache.getMissingGeneration(path);
+		cache.clearMissing(path);
+		cache.putMissing(path, generation);
+		assertFalse(cache.isMissing(path));
+
+		cache.putMissing(path, cache.getMissingGeneration(path));
+		assertTrue(cache.isMissing(path));
+
+		// creating a directory above forgets the paths below it
+		cache.clearMissing(dir);
+		assertFalse(cache.isMissing(path));
+	}
+}
@@ -0,0 +1,68 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.permission.FsAction;
+import org.apache.hadoop.fs.permission.FsPermission;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Microbenchmark of a read permission check, the string based check the gateway
+ * used before HdfsPermissionChecker against the checker itself. Only the CPU cost
+ * is measured: the old check also made three getFileStatus calls per check where
+ * the checker uses one status, which a NameNode adds on top of these numbers.
+ * <p/>
+ * Run with: java -cp target/classes:target/test-classes:&lt;dependencies&gt;
+ * org.apache.hadoop.contrib.ftp.HdfsPermissionCheckerBenchmark [iterations]
+ */
+public class HdfsPermissionCheckerBenchmark {
+
+	private static final int GROUPS = 16;
+
+	private static volatile boolean sink;
+
+	public static void main(String[] args) {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+		List<String> groupList = new ArrayList<String>();
+		for (int i = 0; i < GROUPS; i++) {
+			groupList.add("group" + i);
+		}
+		HdfsUser user = HdfsPermissionCheckerTest.user("bob", groupList.toArray(new String[GROUPS]));
+		// the worst case of the old linear scan: a member of the last group
+		FileStatus status = HdfsPermissionCheckerTest.status("/data/f", 0640, "alice", "group" + (GROUPS - 1));
+
+		for (int round = 0; round < 3; round++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				sink = stringCheck(user.getName(), groupList, status);
+			}
+			long before = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				sink = HdfsPermissionChecker.check(user, status, FsAction.READ);
+			}
+			long after = System.nanoTime() - start;
+
+			System.out.printf("round %d: string check %.1f ns, permission checker %.1f ns per check%n",
+					round, (double) before / iterations, (double) after / iterations);
+		}
+	}
+
+	/**
+	 * Read check of the gateway before HdfsPermissionChecker
+	 */
+	private static boolean stringCheck(String user, List<String> groups, FileStatus status) {
+		FsPermission permissions = status.getPermission();
+		if (user.equals(status.getOwner())) {
+			return permissions.toString().substring(0, 1).equals("r");
+		}
+		for (String group : groups) {
+			if (group.equals(status.getGroup())) {
+				return permissions.toString().substring(3, 4).equals("r");
+			}
+		}
+		return permissions.toString().substring(6, 7).equals("r");
+	}
+}
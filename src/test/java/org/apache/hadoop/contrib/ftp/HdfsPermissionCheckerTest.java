@@ -0,0 +1,57 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsAction;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HdfsPermissionCheckerTest {
+
+	static HdfsUser user(String name, String... groups) {
+		HdfsUser user = new HdfsUser();
+		user.setName(name);
+		user.setGroups(new ArrayList<String>(Arrays.asList(groups)));
+		return user;
+	}
+
+	static FileStatus status(String path, int mode, String owner, String group) {
+		return new FileStatus(0, false, 3, 64 * 1024 * 1024, 0, 0, new FsPermission((short) mode), owner, group,
+				new Path(path));
+	}
+
+	@Test
+	public void ownerGetsOwnerBits() {
+		FileStatus status = status("/f", 0640, "alice", "staff");
+		assertEquals(FsAction.READ_WRITE, HdfsPermissionChecker.getGrantedAction(user("alice", "staff"), status));
+		assertTrue(HdfsPermissionChecker.check(user("alice"), status, FsAction.WRITE));
+	}
+
+	@Test
+	public void groupMemberGetsGroupBits() {
+		FileStatus status = status("/f", 0640, "alice", "staff");
+		assertTrue(HdfsPermissionChecker.check(user("bob", "users", "staff"), status, FsAction.READ));
+		assertFalse(HdfsPermissionChecker.check(user("bob", "users", "staff"), status, FsAction.WRITE));
+	}
+
+	@Test
+	public void othersGetOtherBits() {
+		FileStatus status = status("/f", 0604, "alice", "staff");
+		assertTrue(HdfsPermissionChecker.check(user("carol", "users"), status, FsAction.READ));
+		assertFalse(HdfsPermissionChecker.check(user("carol", "users"), status, FsAction.EXECUTE));
+	}
+
+	@Test
+	public void ownerBitsWinOverOtherBits() {
+		// like HDFS, the owner doesn't fall back to group or other bits
+		FileStatus status = status("/f", 0077, "alice", "staff");
+		assertFalse(HdfsPermissionChecker.check(user("alice", "staff"), status, FsAction.READ));
+	}
+}
@@ -0,0 +1,107 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.apache.hadoop.fs.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URI;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Sharing and invalidation of cached read handles
+ */
+public class HdfsReadHandleCacheTest {
+
+	private static final URI NN = URI.create("hdfs://nn1:9000");
+
+	private static final Path FILE = new Path("/handles/file.bin");
+
+	private FakeHdfs hdfs;
+
+	private HdfsReadHandleCache cache;
+
+	@Before
+	public void setUp() {
+		hdfs = new FakeHdfs();
+		hdfs.putFile(FILE.toString(), FakeHdfs.data(1000));
+		hdfs.putFile("/handles/other.bin", FakeHdfs.data(1000));
+		cache = new HdfsReadHandleCache(16, 60000);
+	}
+
+	@After
+	public void tearDown() {
+		HdfsOverFtpSystem.setProxyUsers(false, 300000);
+	}
+
+	@Test
+	public void handlesAreNotSharedBetweenClients() throws IOException {
+		FakeHdfs.Client alice = hdfs.newClient(NN);
+		FakeHdfs.Client bob = hdfs.newClient(NN);
+
+		HdfsReadHandleCache.Handle first = cache.acquire(alice, FILE, 1);
+		first.release();
+		HdfsReadHandleCache.Handle other = cache.acquire(bob, FILE, 1);
+		other.release();
+		HdfsReadHandleCache.Handle again = cache.acquire(alice, FILE, 1);
+		again.release();
+
+		assertNotSame(first, other);
+		assertSame(first, again);
+		assertEquals(2, hdfs.openCalls.get());
+	}
+
+	@Test
+	public void metadataIsNotCachedForProxyUsers() {
+		HdfsOverFtpSystem.setProxyUsers(true, 300000);
+		Path path = new Path("/handles/proxy");
+		HdfsOverFtpSystem.getMetadataCache().put(path,
+				HdfsPermissionCheckerTest.status(path.toString(), 0600, "alice", "alice"));
+		assertNull(HdfsOverFtpSystem.getMetadataCache().get(path));
+	}
+
+	@Test
+	public void failedReadDropsHandle() throws IOException {
+		FakeHdfs.Client client = hdfs.newClient(NN);
+		HdfsReadHandleCache.Handle handle = cache.acquire(client, FILE, 1);
+		assertEquals(1, cache.size());
+
+		client.close();
+		try {
+			handle.read(0, new byte[10], 0, 10);
+			fail("read of a closed client succeeded");
+		} catch (IOException e) {
+			// expected
+		}
+		handle.release();
+		assertEquals(0, cache.size());
+
+		FakeHdfs.Client replacement = hdfs.newClient(NN);
+		HdfsReadHandleCache.Handle reopened = cache.acquire(replacement, FILE, 1);
+		assertEquals(10, reopened.read(0, new byte[10], 0, 10));
+		reopened.release();
+	}
+
+	@Test
+	public void invalidateAllDropsHandles() throws IOException {
+		FakeHdfs.Client client = hdfs.newClient(NN);
+		cache.acquire(client, FILE, 1).release();
+		HdfsReadHandleCache.Handle inUse = cache.acquire(client, new Path("/handles/other.bin"), 1);
+		assertEquals(2, cache.size());
+
+		cache.invalidateAll();
+		assertEquals(0, cache.size());
+		// a handle in use stays readable until it is released
+		assertEquals(10, inUse.read(0, new byte[10], 0, 10));
+		inUse.release();
+
+		cache.acquire(client, FILE, 1).release();
+		assertEquals(3, hdfs.openCalls.get());
+	}
+}
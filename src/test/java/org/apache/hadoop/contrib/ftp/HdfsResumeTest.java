@@ -0,0 +1,119 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Resumed downloads read from the REST offset with every combination of read
+ * handle cache and read-ahead
+ */
+public class HdfsResumeTest {
+
+	private static final int LENGTH = 8 * 1024 * 1024 + 123;
+
+	private static final String FILE = "/resume/large.bin";
+
+	private final byte[] data = FakeHdfs.data(LENGTH);
+
+	private FakeHdfs hdfs;
+
+	private HdfsUser user;
+
+	@Before
+	public void setUp() {
+		hdfs = new FakeHdfs().install("hdfs://nn1:9000");
+		HdfsOverFtpSystem.setNameNodeFailover(3, 0, 1000);
+		HdfsOverFtpSystem.setClientProbeInterval(0);
+		hdfs.putFile(FILE, data);
+		user = HdfsPermissionCheckerTest.user("hdfs", "supergroup");
+	}
+
+	@After
+	public void tearDown() {
+		HdfsOverFtpSystem.setReadHandleCache(256, 30000);
+		HdfsOverFtpSystem.setPrefetch(4, 256 * 1024);
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[12345];
+		int n;
+		while ((n = in.read(buffer)) != -1) {
+			out.write(buffer, 0, n);
+		}
+		in.close();
+		return out.toByteArray();
+	}
+
+	private void resumeAtOffsets() throws IOException {
+		long[] offsets = {0, 1, 4095, 4096, 256 * 1024, LENGTH / 2, LENGTH - 1, LENGTH};
+		for (long offset : offsets) {
+			InputStream in = new HdfsFileObject(FILE, user).createInputStream(offset);
+			assertArrayEquals(Arrays.copyOfRange(data, (int) offset, LENGTH), readAll(in));
+		}
+	}
+
+	private void readRanges() throws IOException {
+		long[][] ranges = {{0, 1}, {100, 4096}, {LENGTH / 3, 1024 * 1024}, {LENGTH - 10, 10}};
+		for (long[] range : ranges) {
+			InputStream in = new HdfsFileObject(FILE, user).createInputStream(range[0], range[1]);
+			assertArrayEquals(Arrays.copyOfRange(data, (int) range[0], (int) (range[0] + range[1])), readAll(in));
+		}
+	}
+
+	@Test
+	public void resumeWithHandleCacheAndReadAhead() throws IOException {
+		resumeAtOffsets();
+		readRanges();
+	}
+
+	@Test
+	public void resumeWithoutReadAhead() throws IOException {
+		HdfsOverFtpSystem.setPrefetch(0, 256 * 1024);
+		resumeAtOffsets();
+		readRanges();
+	}
+
+	@Test
+	public void resumeWithoutHandleCache() throws IOException {
+		HdfsOverFtpSystem.setReadHandleCache(0, 30000);
+		resumeAtOffsets();
+		readRanges();
+	}
+
+	@Test
+	public void resumeWithoutHandleCacheAndReadAhead() throws IOException {
+		HdfsOverFtpSystem.setReadHandleCache(0, 30000);
+		HdfsOverFtpSystem.setPrefetch(0, 256 * 1024);
+		resumeAtOffsets();
+		readRanges();
+	}
+
+	@Test
+	public void offsetBeyondTheEndIsRejected() {
+		try {
+			new HdfsFileObject(FILE, user).createInputStream(LENGTH + 1);
+			fail("Offset beyond the end accepted");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void cachedHandleIsOpenedOnce() throws IOException {
+		HdfsOverFtpSystem.setReadHandleCache(16, 30000);
+		int opens = hdfs.openCalls.get();
+		resumeAtOffsets();
+		assertEquals(1, hdfs.openCalls.get() - opens);
+	}
+}
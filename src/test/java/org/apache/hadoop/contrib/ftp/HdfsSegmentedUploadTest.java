@@ -0,0 +1,104 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * SITE COMMIT joins segments into a temporary file and replaces the target only
+ * when the joined file is complete
+ */
+public class HdfsSegmentedUploadTest {
+
+	private FakeHdfs hdfs;
+
+	private HdfsUser user;
+
+	@Before
+	public void setUp() {
+		hdfs = new FakeHdfs().install("hdfs://nn1:9000");
+		HdfsOverFtpSystem.setNameNodeFailover(3, 0, 1000);
+		HdfsOverFtpSystem.setClientProbeInterval(0);
+		user = HdfsPermissionCheckerTest.user("hdfs", "supergroup");
+	}
+
+	private HdfsFileObject file(String name) {
+		return new HdfsFileObject(name, user);
+	}
+
+	private HdfsFileObject[] segments(String target, int count) {
+		HdfsFileObject[] segments = new HdfsFileObject[count];
+		for (int i = 0; i < count; i++) {
+			segments[i] = file(HdfsSegmentedUpload.getSegmentName(target, i));
+		}
+		return segments;
+	}
+
+	@Test
+	public void commitReplacesTarget() throws IOException {
+		String target = "/upload/replaced.bin";
+		byte[] data = FakeHdfs.data(3 * 1000 + 7);
+		hdfs.putFile(target, new byte[]{1, 2, 3});
+		for (int i = 0; i < 4; i++) {
+			hdfs.putFile(HdfsSegmentedUpload.getSegmentName(target, i),
+					Arrays.copyOfRange(data, i * 1000, Math.min(data.length, (i + 1) * 1000)));
+		}
+
+		long len = HdfsSegmentedUpload.commit(file(target), segments(target, 4),
+				file(HdfsSegmentedUpload.getTempName(target)));
+
+		assertEquals(data.length, len);
+		assertArrayEquals(data, hdfs.getFile(target));
+		assertFalse(hdfs.exists(HdfsSegmentedUpload.getTempName(target)));
+		for (int i = 0; i < 4; i++) {
+			assertFalse(hdfs.exists(HdfsSegmentedUpload.getSegmentName(target, i)));
+		}
+	}
+
+	@Test
+	public void singleSegmentIsMoved() throws IOException {
+		String target = "/upload/single.bin";
+		byte[] data = FakeHdfs.data(100);
+		hdfs.putFile(HdfsSegmentedUpload.getSegmentName(target, 0), data);
+
+		HdfsSegmentedUpload.commit(file(target), segments(target, 1), file(HdfsSegmentedUpload.getTempName(target)));
+
+		assertArrayEquals(data, hdfs.getFile(target));
+	}
+
+	@Test
+	public void missingSegmentKeepsTarget() {
+		String target = "/upload/kept.bin";
+		byte[] old = {1, 2, 3};
+		hdfs.putFile(target, old);
+		hdfs.putFile(HdfsSegmentedUpload.getSegmentName(target, 0), FakeHdfs.data(10));
+
+		try {
+			HdfsSegmentedUpload.commit(file(target), segments(target, 2), file(HdfsSegmentedUpload.getTempName(target)));
+			fail("commit without segment 1 succeeded");
+		} catch (IOException e) {
+			// expected
+		}
+		assertArrayEquals(old, hdfs.getFile(target));
+		assertTrue(hdfs.exists(HdfsSegmentedUpload.getSegmentName(target, 0)));
+	}
+
+	@Test
+	public void moveAndDeleteReportFailures() {
+		hdfs.putFile("/upload/a", new byte[1]);
+		hdfs.putFile("/upload/b", new byte[2]);
+
+		assertFalse(file("/upload/a").move(file("/upload/b")));
+		assertFalse(file("/upload/missing").delete());
+		assertTrue(file("/upload/a").move(file("/upload/c")));
+		assertTrue(file("/upload/c").delete());
+	}
+}
@@ -0,0 +1,124 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Lazy creation of the shared client and replacement of a client failing probes
+ */
+public class HdfsSharedClientTest {
+
+	private static final URI NN = URI.create("hdfs://nn1:9000");
+
+	private FakeHdfs hdfs;
+
+	private HdfsNameNodes nameNodes;
+
+	private HdfsSharedClient shared;
+
+	@Before
+	public void setUp() {
+		hdfs = new FakeHdfs();
+		nameNodes = new HdfsNameNodes(Collections.singletonList(NN), 3, 0, 1000, null);
+	}
+
+	@After
+	public void tearDown() {
+		if (shared != null) {
+			shared.close();
+		}
+		nameNodes.close();
+	}
+
+	@Test(timeout = 10000)
+	public void concurrentCallersGetOneClient() throws Exception {
+		final CountDownLatch creating = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger created = new AtomicInteger();
+		shared = new HdfsSharedClient(0, nameNodes, new HdfsSharedClient.ClientFactory() {
+			public DistributedFileSystem create(URI uri) throws IOException {
+				created.incrementAndGet();
+				creating.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new IOException("Interrupted");
+				}
+				return hdfs.newClient(uri);
+			}
+		});
+
+		final DistributedFileSystem[] results = new DistributedFileSystem[8];
+		Thread[] threads = new Thread[results.length];
+		for (int i = 0; i < threads.length; i++) {
+			final int n = i;
+			threads[i] = new Thread(new Runnable() {
+				public void run() {
+					try {
+						results[n] = shared.get();
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+			});
+			threads[i].start();
+		}
+		assertTrue(creating.await(5, TimeUnit.SECONDS));
+		release.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(1, created.get());
+		for (DistributedFileSystem result : results) {
+			assertSame(results[0], result);
+		}
+		assertSame(results[0], shared.get());
+	}
+
+	@Test
+	public void clientIsReplacedAfterConsecutiveFailedProbes() throws IOException {
+		shared = new HdfsSharedClient(3600000, nameNodes, hdfs.factory());
+		FakeHdfs.Client client = (FakeHdfs.Client) shared.get();
+
+		// single failures in between successful probes keep the client
+		for (int i = 0; i < 5; i++) {
+			hdfs.setDown(NN, true);
+			shared.probe();
+			shared.probe();
+			hdfs.setDown(NN, false);
+			shared.probe();
+		}
+		assertSame(client, shared.get());
+
+		hdfs.setDown(NN, true);
+		shared.probe();
+		shared.probe();
+		shared.probe();
+		hdfs.setDown(NN, false);
+
+		DistributedFileSystem replacement = shared.get();
+		assertNotSame(client, replacement);
+		// retired, not closed: calls in progress on it can finish
+		assertFalse(client.isClosed());
+
+		shared.close();
+		shared = null;
+		assertTrue(client.isClosed());
+	}
+}
@@ -0,0 +1,125 @@
+package org.apache.hadoop.contrib.ftp;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Write-behind stream fails instead of hanging when its writer stops and
+ * never closes the HDFS stream under a running writer
+ */
+public class HdfsWriteBehindOutputStreamTest {
+
+	private final HdfsBufferPool pool = new HdfsBufferPool(1024 * 1024, false, 1000);
+
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+
+	/**
+	 * HDFS stream whose writes block until released, closing it during a write is recorded
+	 */
+	private static class BlockingStream extends OutputStream {
+		private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+		private final CountDownLatch writing = new CountDownLatch(1);
+		private final CountDownLatch release = new CountDownLatch(1);
+		private volatile boolean inWrite = false;
+		private volatile boolean closed = false;
+		private volatile boolean closedDuringWrite = false;
+
+		public void write(int b) throws IOException {
+			write(new byte[]{(byte) b}, 0, 1);
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException {
+			inWrite = true;
+			try {
+				writing.countDown();
+				release.await();
+				data.write(b, off, len);
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException();
+			} finally {
+				inWrite = false;
+			}
+		}
+
+		public void close() {
+			closedDuringWrite = inWrite;
+			closed = true;
+		}
+	}
+
+	@After
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	@Test(timeout = 10000)
+	public void dataIsWrittenBeforeClose() throws Exception {
+		BlockingStream hdfs = new BlockingStream();
+		hdfs.release.countDown();
+		OutputStream out = new HdfsWriteBehindOutputStream(hdfs, 2, 4, pool, executor);
+		out.write(new byte[]{1, 2, 3, 4, 5, 6});
+		out.close();
+		assertArrayEquals(new byte[]{1, 2, 3, 4, 5, 6}, hdfs.data.toByteArray());
+		assertTrue(hdfs.closed);
+		assertEquals(0, pool.getInUse());
+	}
+
+	@Test(timeout = 10000)
+	public void stoppedWriterFailsFlushAndClose() throws Exception {
+		BlockingStream hdfs = new BlockingStream();
+		OutputStream out = new HdfsWriteBehindOutputStream(hdfs, 2, 4, pool, executor);
+		// fill a pooled buffer so it goes to the writer
+		out.write(new byte[64 * 1024]);
+		out.write(5);
+		hdfs.writing.await();
+		executor.shutdownNow();
+		try {
+			out.flush();
+			fail("flush after the writer stopped");
+		} catch (IOException expected) {
+		}
+		try {
+			out.close();
+			fail("close after the writer stopped");
+		} catch (IOException expected) {
+		}
+		assertTrue(hdfs.closed);
+		assertFalse(hdfs.closedDuringWrite);
+		assertEquals(0, pool.getInUse());
+	}
+
+	@Test(timeout = 10000)
+	public void closeWaitsForTheWriter() throws Exception {
+		BlockingStream hdfs = new BlockingStream();
+		OutputStream out = new HdfsWriteBehindOutputStream(hdfs, 2, 4, pool, executor);
+		// fill a pooled buffer so it goes to the writer
+		out.write(new byte[64 * 1024]);
+		out.write(5);
+		hdfs.writing.await();
+		Thread.currentThread().interrupt();
+		try {
+			out.close();
+			fail("interrupted close");
+		} catch (InterruptedIOException expected) {
+		} finally {
+			Thread.interrupted();
+		}
+		assertTrue(hdfs.closed);
+		assertFalse(hdfs.closedDuringWrite);
+		assertEquals(0, pool.getInUse());
+	}
+}